@@ -28,8 +28,8 @@ import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 import org.lwjgl.opengl.GL11;
 
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -41,7 +41,7 @@ import java.util.UUID;
 public class GoggleAuraWorldRenderer {
 
     public static GoggleAuraWorldRenderer INSTANCE = new GoggleAuraWorldRenderer();
-    public Collection<CartInfo> cartInfos = new LinkedList<>();
+    public final Map<UUID, CartInfo> cartInfos = new LinkedHashMap<>();
 
     @SubscribeEvent
     public void onWorldRender(final RenderWorldLastEvent event) {
@@ -76,7 +76,7 @@ public class GoggleAuraWorldRenderer {
                 OpenGL.glBegin(GL11.GL_LINES);
 
                 World world = Minecraft.getMinecraft().theWorld;
-                for (CartInfo cartInfo : cartInfos) {
+                for (CartInfo cartInfo : cartInfos.values()) {
                     EntityMinecart cart = CartTools.getCartFromUUID(world, cartInfo.id);
                     if (cart == null) {
                         continue;
@@ -11,7 +11,6 @@
 package mods.railcraft.common.blocks;
 
 import mods.railcraft.common.util.misc.MiscTools;
-import mods.railcraft.common.util.network.PacketBuilder;
 import net.minecraft.util.ITickable;
 
 /**
@@ -22,20 +21,9 @@ import net.minecraft.util.ITickable;
 public abstract class RailcraftTickingTileEntity extends RailcraftTileEntity implements ITickable {
 
     protected int clock = MiscTools.RANDOM.nextInt();
-    private boolean sendClientUpdate;
 
     @Override
     public void update() {
         clock++;
-
-        if (sendClientUpdate) {
-            sendClientUpdate = false;
-            PacketBuilder.instance().sendTileEntityPacket(this);
-        }
-    }
-
-    @Override
-    public void sendUpdateToClient() {
-        sendClientUpdate = true;
     }
 }
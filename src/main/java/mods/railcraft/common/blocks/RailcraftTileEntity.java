@@ -22,6 +22,8 @@ import mods.railcraft.common.plugins.forge.WorldPlugin;
 import mods.railcraft.common.util.misc.AdjacentTileCache;
 import mods.railcraft.common.util.misc.Game;
 import mods.railcraft.common.util.network.PacketBuilder;
+import mods.railcraft.common.util.network.PacketDispatcher;
+import mods.railcraft.common.util.network.PacketTileRequest;
 import mods.railcraft.common.util.network.RailcraftInputStream;
 import mods.railcraft.common.util.network.RailcraftOutputStream;
 import net.minecraft.block.Block;
@@ -36,16 +38,20 @@ import net.minecraft.util.text.ITextComponent;
 import net.minecraft.util.text.TextComponentString;
 import net.minecraft.util.text.TextComponentTranslation;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
 public abstract class RailcraftTileEntity extends TileEntity implements INetworkedObject<RailcraftInputStream, RailcraftOutputStream>, IOwnable {
+    private static final byte[] NO_DATA = {};
+    private static final int DELTA_OVERHEAD = 24;
 
     protected final AdjacentTileCache tileCache = new AdjacentTileCache(this);
     @Nonnull
@@ -53,6 +59,8 @@ public abstract class RailcraftTileEntity extends TileEntity implements INetwork
     private UUID uuid;
     @Nonnull
     private String customName = "";
+    private byte[] syncData = NO_DATA;
+    private int syncVersion;
 
     public static boolean isUsableByPlayerHelper(TileEntity tile, EntityPlayer player) {
         return !tile.isInvalid() && tile.getWorld().getTileEntity(tile.getPos()) == tile && player.getDistanceSq(tile.getPos()) <= 64;
@@ -81,9 +89,70 @@ public abstract class RailcraftTileEntity extends TileEntity implements INetwork
         return new SPacketUpdateTileEntity(getPos(), 0, getUpdateTag());
     }
 
+    /**
+     * A full snapshot, sent when a player starts watching the chunk.
+     */
     @Override
     public final NBTTagCompound getUpdateTag() {
         NBTTagCompound nbt = super.getUpdateTag();
+        if (worldObj instanceof WorldServer) {
+            // bring the current watchers up to date first, so they hold the same version as the snapshot
+            syncToWatchers();
+            nbt.setByteArray("sync", syncData);
+        } else
+            nbt.setByteArray("sync", writeSyncData());
+        nbt.setInteger("version", syncVersion);
+        return nbt;
+    }
+
+    /**
+     * Sends what changed since the last sync to the players watching this tile's chunk, right away.
+     * Normally {@link #sendUpdateToClient()} is used instead, which batches the change with the rest of the tick.
+     */
+    public final void syncToWatchers() {
+        NBTTagCompound nbt = makeSyncUpdate();
+        if (nbt != null)
+            PacketDispatcher.sendToWatchers(new SPacketUpdateTileEntity(getPos(), 0, nbt), (WorldServer) worldObj, getX(), getZ());
+    }
+
+    /**
+     * Takes what changed since the last sync, and remembers the new data as sent.
+     *
+     * Returns null if the sync data is the same as last time. Otherwise only the changed
+     * run of bytes between the common start and end of the old and new data is included,
+     * unless the whole thing would be smaller.
+     */
+    @Nullable
+    public final NBTTagCompound makeSyncUpdate() {
+        if (!(worldObj instanceof WorldServer))
+            return null;
+        byte[] bytes = writeSyncData();
+        if (Arrays.equals(bytes, syncData))
+            return null;
+        int max = Math.min(bytes.length, syncData.length);
+        int head = 0;
+        while (head < max && bytes[head] == syncData[head]) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < max - head && bytes[bytes.length - 1 - tail] == syncData[syncData.length - 1 - tail]) {
+            tail++;
+        }
+        NBTTagCompound nbt = new NBTTagCompound();
+        int runLength = bytes.length - head - tail;
+        if (runLength + DELTA_OVERHEAD < bytes.length) {
+            nbt.setInteger("base", syncVersion);
+            nbt.setInteger("head", head);
+            nbt.setInteger("tail", tail);
+            nbt.setByteArray("delta", Arrays.copyOfRange(bytes, head, head + runLength));
+        } else
+            nbt.setByteArray("sync", bytes);
+        syncData = bytes;
+        nbt.setInteger("version", ++syncVersion);
+        return nbt;
+    }
+
+    private byte[] writeSyncData() {
         ByteBuf byteBuf = Unpooled.buffer();
         try (ByteBufOutputStream out = new ByteBufOutputStream(byteBuf);
              RailcraftOutputStream data = new RailcraftOutputStream(out)) {
@@ -93,13 +162,48 @@ public abstract class RailcraftTileEntity extends TileEntity implements INetwork
             if (Game.DEVELOPMENT_ENVIRONMENT)
                 throw new RuntimeException(e);
         }
-        nbt.setByteArray("sync", byteBuf.array());
-        return nbt;
+        // only what was written, not the whole backing array
+        byte[] bytes = new byte[byteBuf.readableBytes()];
+        byteBuf.readBytes(bytes);
+        return bytes;
     }
 
     @Override
     public final void handleUpdateTag(NBTTagCompound nbt) {
-        byte[] bytes = nbt.getByteArray("sync");
+        readSyncData(nbt.getByteArray("sync"), nbt.getInteger("version"));
+    }
+
+    @Override
+    public final void onDataPacket(net.minecraft.network.NetworkManager net, net.minecraft.network.play.server.SPacketUpdateTileEntity pkt) {
+        handleSyncUpdate(pkt.getNbtCompound());
+    }
+
+    /**
+     * Applies a snapshot or a change made by {@link #makeSyncUpdate()}.
+     */
+    public final void handleSyncUpdate(NBTTagCompound nbt) {
+        if (!nbt.hasKey("delta")) {
+            handleUpdateTag(nbt);
+            return;
+        }
+        byte[] run = nbt.getByteArray("delta");
+        int head = nbt.getInteger("head");
+        int tail = nbt.getInteger("tail");
+        if (nbt.getInteger("base") != syncVersion || head + tail > syncData.length) {
+            // we missed the data this change was made against, ask for a snapshot
+            PacketDispatcher.sendToServer(new PacketTileRequest(this));
+            return;
+        }
+        byte[] bytes = new byte[head + run.length + tail];
+        System.arraycopy(syncData, 0, bytes, 0, head);
+        System.arraycopy(run, 0, bytes, head, run.length);
+        System.arraycopy(syncData, syncData.length - tail, bytes, head + run.length, tail);
+        readSyncData(bytes, nbt.getInteger("version"));
+    }
+
+    private void readSyncData(byte[] bytes, int version) {
+        syncData = bytes;
+        syncVersion = version;
         try (ByteArrayInputStream in = new ByteArrayInputStream(bytes);
              RailcraftInputStream data = new RailcraftInputStream(in)) {
             readPacketData(data);
@@ -110,11 +214,6 @@ public abstract class RailcraftTileEntity extends TileEntity implements INetwork
         }
     }
 
-    @Override
-    public final void onDataPacket(net.minecraft.network.NetworkManager net, net.minecraft.network.play.server.SPacketUpdateTileEntity pkt) {
-        handleUpdateTag(pkt.getNbtCompound());
-    }
-
     @Override
     public void writePacketData(RailcraftOutputStream data) throws IOException {
 //        data.writeUTF(owner);
@@ -12,18 +12,17 @@ package mods.railcraft.common.blocks.charge;
 
 import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.plugins.forge.NBTPlugin;
+import mods.railcraft.common.util.collections.LongDoubleMap;
 import mods.railcraft.common.util.misc.Game;
 import net.minecraft.nbt.NBTTagCompound;
-import net.minecraft.nbt.NBTTagList;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.WorldSavedData;
 import net.minecraft.world.storage.MapStorage;
 import org.apache.logging.log4j.Level;
 
-import java.util.LinkedHashMap;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Created by CovertJaguar on 8/1/2016 for Railcraft.
@@ -32,7 +31,14 @@ import java.util.Map;
  */
 public class BatterySaveData extends WorldSavedData {
     private static final String NAME = "railcraft.batteries";
-    private Map<BlockPos, Double> chargeLevels = new LinkedHashMap<>();
+    private static final int VERSION = 1;
+    /**
+     * How far a battery can drift from the saved level, as a fraction of its capacity,
+     * before the data needs saving again.
+     */
+    private static final double DIRTY_THRESHOLD = 0.01;
+    private final LongDoubleMap chargeLevels = new LongDoubleMap();
+    private final LongDoubleMap savedLevels = new LongDoubleMap();
 
     public static BatterySaveData forWorld(World world) {
         MapStorage storage = world.getPerWorldStorage();
@@ -53,14 +59,19 @@ public class BatterySaveData extends WorldSavedData {
     public NBTTagCompound writeToNBT(NBTTagCompound nbt) {
         if (RailcraftConfig.printChargeDebug())
             Game.log(Level.INFO, "Saving Charge Battery data...");
-        NBTTagList list = new NBTTagList();
-        for (Map.Entry<BlockPos, Double> entry : chargeLevels.entrySet()) {
-            NBTTagCompound dataEntry = new NBTTagCompound();
-            NBTPlugin.writeBlockPos(dataEntry, "pos", entry.getKey());
-            dataEntry.setDouble("value", entry.getValue());
-            list.appendTag(dataEntry);
-        }
-        nbt.setTag("batteries", list);
+        // all the positions, followed by all the charge levels
+        int count = chargeLevels.size();
+        ByteBuffer positions = ByteBuffer.allocate(count * 16);
+        ByteBuffer levels = positions.duplicate();
+        levels.position(count * 8);
+        savedLevels.clear();
+        chargeLevels.forEach((pos, value) -> {
+            positions.putLong(pos);
+            levels.putDouble(value);
+            savedLevels.put(pos, value);
+        });
+        nbt.setInteger("version", VERSION);
+        nbt.setByteArray("data", positions.array());
         return nbt;
     }
 
@@ -68,25 +79,58 @@ public class BatterySaveData extends WorldSavedData {
     public void readFromNBT(NBTTagCompound nbt) {
         if (RailcraftConfig.printChargeDebug())
             Game.log(Level.INFO, "Loading Charge Battery data...");
-        List<NBTTagCompound> list = NBTPlugin.getNBTList(nbt, "batteries", NBTPlugin.EnumNBTType.COMPOUND);
-        for (NBTTagCompound entry : list) {
-            BlockPos pos = NBTPlugin.readBlockPos(entry, "pos");
-            if (pos != null)
-                chargeLevels.put(pos, entry.getDouble("value"));
+        int version = nbt.getInteger("version");
+        if (version > VERSION) {
+            // written by a newer version, reading it as ours would load garbage
+            Game.log(Level.WARN, "Unknown Charge Battery data version {0}, battery levels were not loaded", version);
+        } else if (version == VERSION) {
+            ByteBuffer positions = ByteBuffer.wrap(nbt.getByteArray("data"));
+            int count = positions.remaining() / 16;
+            ByteBuffer levels = positions.duplicate();
+            levels.position(count * 8);
+            for (int i = 0; i < count; i++) {
+                long pos = positions.getLong();
+                double value = levels.getDouble();
+                chargeLevels.put(pos, value);
+                savedLevels.put(pos, value);
+            }
+        } else {
+            // older saves stored a compound per battery, they get rewritten in the new format next save
+            List<NBTTagCompound> list = NBTPlugin.getNBTList(nbt, "batteries", NBTPlugin.EnumNBTType.COMPOUND);
+            for (NBTTagCompound entry : list) {
+                BlockPos pos = NBTPlugin.readBlockPos(entry, "pos");
+                if (pos != null)
+                    chargeLevels.put(pos.toLong(), entry.getDouble("value"));
+            }
+            if (!list.isEmpty())
+                markDirty();
         }
     }
 
-    public void initBattery(BlockPos pos, IChargeBlock.ChargeBattery chargeBattery) {
-        chargeBattery.initCharge(chargeLevels.getOrDefault(pos, 0.0));
+    /**
+     * @param pos the packed position of the battery, see {@link BlockPos#toLong()}
+     */
+    public void initBattery(long pos, IChargeBlock.ChargeBattery chargeBattery) {
+        chargeBattery.initCharge(chargeLevels.get(pos, 0.0));
     }
 
-    public void updateBatteryRecord(BlockPos pos, IChargeBlock.ChargeBattery chargeBattery) {
-        chargeLevels.put(pos, chargeBattery.getCharge());
-        markDirty();
+    /**
+     * Small changes are recorded but don't mark the data dirty, the latest levels
+     * still get written whenever the data is saved for some other reason.
+     */
+    public void updateBatteryRecord(long pos, IChargeBlock.ChargeBattery chargeBattery) {
+        double charge = chargeBattery.getCharge();
+        chargeLevels.put(pos, charge);
+        if (isDirty())
+            return;
+        double saved = savedLevels.get(pos, Double.NaN);
+        if (Double.isNaN(saved) || Math.abs(charge - saved) > chargeBattery.getCapacity() * DIRTY_THRESHOLD)
+            markDirty();
     }
 
-    public void removeBattery(BlockPos pos) {
-        if (chargeLevels.remove(pos) != null)
+    public void removeBattery(long pos) {
+        chargeLevels.remove(pos);
+        if (savedLevels.remove(pos))
             markDirty();
     }
 }
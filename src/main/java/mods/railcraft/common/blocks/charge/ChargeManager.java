@@ -11,6 +11,7 @@
 package mods.railcraft.common.blocks.charge;
 
 import com.google.common.collect.MapMaker;
+import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.items.ModItems;
 import mods.railcraft.common.items.RailcraftItems;
 import mods.railcraft.common.plugins.forge.WorldPlugin;
@@ -18,6 +19,7 @@ import mods.railcraft.common.util.effects.EffectManager;
 import mods.railcraft.common.util.inventory.InvTools;
 import mods.railcraft.common.util.misc.Game;
 import mods.railcraft.common.util.misc.MiscTools;
+import mods.railcraft.common.util.misc.PackedBlockPos;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.EntityPlayer;
@@ -31,8 +33,9 @@ import net.minecraftforge.fml.common.gameevent.TickEvent;
 import net.minecraftforge.fml.relauncher.Side;
 
 import javax.annotation.Nullable;
-import java.util.EnumSet;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.function.BiConsumer;
 
 /**
@@ -42,19 +45,46 @@ import java.util.function.BiConsumer;
  */
 public class ChargeManager {
     private static final Map<World, ChargeNetwork> chargeNetworks = new MapMaker().weakKeys().makeMap();
+    @Nullable
+    private static ForkJoinPool workerPool;
 
     public static ChargeNetwork getNetwork(World world) {
         return chargeNetworks.computeIfAbsent(world, ChargeNetwork::new);
     }
 
+    /**
+     * The pool used to balance graphs in parallel, shared by every world.
+     *
+     * @return the pool, or null if parallel balancing is disabled in the config
+     */
+    @Nullable
+    static synchronized ForkJoinPool getWorkerPool() {
+        int threads = RailcraftConfig.chargeWorkerThreads();
+        if (threads <= 0)
+            return null;
+        if (workerPool == null)
+            workerPool = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Railcraft Charge Worker-" + thread.getPoolIndex());
+                thread.setDaemon(true);
+                return thread;
+            }, null, false);
+        return workerPool;
+    }
+
     public static ChargeManager getEventListener() {
         return new ChargeManager();
     }
 
     @SubscribeEvent
     public void tick(TickEvent.WorldTickEvent event) {
-        if (event.side == Side.SERVER && event.phase == TickEvent.Phase.END)
-            getNetwork(event.world).tick();
+        if (event.side == Side.SERVER && event.phase == TickEvent.Phase.END) {
+            ChargeNetwork network = getNetwork(event.world);
+            network.tick();
+            int logInterval = RailcraftConfig.chargeMetricsLogInterval();
+            if (logInterval > 0 && event.world.getTotalWorldTime() % logInterval == 0)
+                ChargeMetricsLog.write(event.world, network);
+        }
     }
 
     public static void forConnections(World world, BlockPos pos, BiConsumer<BlockPos, IChargeBlock.ChargeDef> action) {
@@ -63,13 +93,16 @@ public class ChargeManager {
             IChargeBlock block = (IChargeBlock) state.getBlock();
             IChargeBlock.ChargeDef chargeDef = block.getChargeDef(state, world, pos);
             if (chargeDef != null) {
-                Map<BlockPos, EnumSet<IChargeBlock.ConnectType>> possibleConnections = chargeDef.getConnectType().getPossibleConnectionLocations(pos);
-                for (Map.Entry<BlockPos, EnumSet<IChargeBlock.ConnectType>> connection : possibleConnections.entrySet()) {
-                    IBlockState otherState = WorldPlugin.getBlockState(world, connection.getKey());
+                IChargeBlock.ConnectType connectType = chargeDef.getConnectType();
+                long packedPos = pos.toLong();
+                BlockPos.MutableBlockPos conPos = new BlockPos.MutableBlockPos();
+                for (int i = 0; i < connectType.getConnectionCount(); i++) {
+                    PackedBlockPos.unpack(connectType.getConnectionLocation(packedPos, i), conPos);
+                    IBlockState otherState = WorldPlugin.getBlockState(world, conPos);
                     if (otherState.getBlock() instanceof IChargeBlock) {
-                        IChargeBlock.ChargeDef other = ((IChargeBlock) otherState.getBlock()).getChargeDef(WorldPlugin.getBlockState(world, connection.getKey()), world, connection.getKey());
-                        if (other != null && other.getConnectType().getPossibleConnectionLocations(connection.getKey()).get(pos).contains(chargeDef.getConnectType())) {
-                            action.accept(connection.getKey(), other);
+                        IChargeBlock.ChargeDef other = ((IChargeBlock) otherState.getBlock()).getChargeDef(otherState, world, conPos);
+                        if (other != null && connectType.canConnect(i, other.getConnectType())) {
+                            action.accept(conPos.toImmutable(), other);
                         }
                     }
                 }
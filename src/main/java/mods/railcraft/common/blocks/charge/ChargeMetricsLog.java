@@ -0,0 +1,74 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+
+package mods.railcraft.common.blocks.charge;
+
+import mods.railcraft.common.util.misc.Game;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.common.DimensionManager;
+import org.apache.logging.log4j.Level;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Appends periodic Charge Network metrics to a CSV file in the world folder,
+ * one row for the network as a whole and one for each graph.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+final class ChargeMetricsLog {
+    private static final String FILE_NAME = "charge_metrics.csv";
+    private static final String HEADER = "time,dim,graph,x,y,z,nodes,batteries,queued,sleeping,parked,draw,avgUsage,avgTickMs";
+
+    private ChargeMetricsLog() {
+    }
+
+    static void write(World world, ChargeNetwork network) {
+        File saveDir = DimensionManager.getCurrentSaveRootDirectory();
+        if (saveDir == null)
+            return;
+        File file = new File(new File(saveDir, "railcraft"), FILE_NAME);
+        boolean newFile = !file.exists();
+        long time = world.getTotalWorldTime();
+        int dim = world.provider.getDimension();
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (newFile) {
+                    writer.write(HEADER);
+                    writer.newLine();
+                }
+                double draw = network.getGraphs().stream().mapToDouble(ChargeNetwork.ChargeGraph::getLastTickDraw).sum();
+                int batteries = network.getGraphs().stream().mapToInt(ChargeNetwork.ChargeGraph::getBatteryCount).sum();
+                writer.write(String.format(Locale.ROOT, "%d,%d,network,,,,%d,%d,%d,,,%.4f,,%.4f",
+                        time, dim, network.getNodeCount(), batteries, network.getQueueDepth(), draw, network.getAverageTickTime() / 1e6));
+                writer.newLine();
+                for (ChargeNetwork.ChargeGraph graph : network.getGraphs()) {
+                    BlockPos anchor = graph.getAnchor();
+                    writer.write(String.format(Locale.ROOT, "%d,%d,%08x,%s,%d,%d,,%b,%b,%.4f,%.4f,%.4f",
+                            time, dim, System.identityHashCode(graph),
+                            anchor == null ? ",," : anchor.getX() + "," + anchor.getY() + "," + anchor.getZ(),
+                            graph.size(), graph.getBatteryCount(), graph.isSleeping(), graph.isParked(),
+                            graph.getLastTickDraw(), graph.getStoredAverageUsagePerTick(), graph.getAverageTickTime() / 1e6));
+                    writer.newLine();
+                }
+            }
+        } catch (IOException ex) {
+            Game.log(Level.WARN, "Failed to write Charge Network metrics to {0}: {1}", file, ex.getMessage());
+        }
+    }
+}
@@ -15,6 +15,7 @@ import com.google.common.collect.ForwardingSet;
 import com.google.common.collect.Iterators;
 import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.plugins.forge.WorldPlugin;
+import mods.railcraft.common.util.collections.LongObjectMap;
 import mods.railcraft.common.util.misc.Game;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.math.BlockPos;
@@ -24,6 +25,8 @@ import org.apache.logging.log4j.Level;
 import javax.annotation.Nullable;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -35,14 +38,37 @@ import java.util.function.Supplier;
  * @author CovertJaguar <http://www.railcraft.info>
  */
 public class ChargeNetwork {
+    /**
+     * How long a graph must go without being disturbed before it goes to sleep.
+     */
+    private static final int TICKS_TO_SLEEP = 40;
+    /**
+     * How often sleeping graphs are checked to see if they are in unloaded chunks.
+     */
+    private static final int PARK_CHECK_INTERVAL = 200;
+    /**
+     * Below this many awake graphs it's cheaper to just balance them on the main thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 8;
     private final ChargeGraph NULL_GRAPH = new NullGraph();
-    private final Map<BlockPos, ChargeNode> chargeNodes = new HashMap<>();
-    private final Map<BlockPos, ChargeNode> chargeQueue = new LinkedHashMap<>();
+    private final LongObjectMap<ChargeNode> chargeNodes = new LongObjectMap<>();
+    private final LongObjectMap<ChargeNode> chargeQueue = new LongObjectMap<>();
     private final Set<ChargeNode> tickingNodes = new LinkedHashSet<>();
-    private final Set<ChargeGraph> chargeGraphs = Collections.newSetFromMap(new WeakHashMap<>());
+    private final Set<ChargeNode> requestingNodes = new LinkedHashSet<>();
+    private final Set<ChargeNode> dirtyBatteries = new LinkedHashSet<>();
+    // kept in insertion order so graphs tick and write their batteries in the same order every run,
+    // graphs leave the set in ChargeGraph.destroy()
+    private final Set<ChargeGraph> chargeGraphs = new LinkedHashSet<>();
     private final ChargeNode NULL_NODE = new NullNode();
     private final WeakReference<World> world;
     private final BatterySaveData batterySaveData;
+    private long ticks;
+    private long lastTickTime;
+    private double averageTickTime;
+    private int graphMerges;
+    private long graphMergeTime;
+    private int graphSplits;
+    private long graphSplitTime;
 
     public ChargeNetwork(World world) {
         this.world = new WeakReference<World>(world);
@@ -58,83 +84,266 @@ public class ChargeNetwork {
         World worldObj = world.get();
         if (worldObj == null)
             return;
+        long start = System.nanoTime();
+        ticks++;
         tickingNodes.removeIf(chargeNode -> !chargeNode.tickUsageRecording());
 
         // Process the queue of nodes waiting to be added/removed from the network
-        Map<BlockPos, ChargeNode> added = new LinkedHashMap<>();
-        Iterator<Map.Entry<BlockPos, ChargeNode>> iterator = chargeQueue.entrySet().iterator();
+        List<ChargeNode> added = new ArrayList<>();
         int count = 0;
-        while (iterator.hasNext() && count < 500) {
+        while (!chargeQueue.isEmpty() && count < 500) {
             count++;
-            Map.Entry<BlockPos, ChargeNode> action = iterator.next();
-            if (action.getValue() == null) {
-                deleteNode(action.getKey());
+            long pos = chargeQueue.firstKey();
+            ChargeNode action = chargeQueue.remove(pos);
+            if (action == null) {
+                deleteNode(pos);
             } else {
-                insertNode(action.getKey(), action.getValue());
-                added.put(action.getKey(), action.getValue());
+                insertNode(action);
+                added.add(action);
             }
-            iterator.remove();
         }
 
         // Search for connected nodes of recently added nodes and register them too
         // helps fill out the graph faster and more reliably
         Set<BlockPos> newNodes = new HashSet<>();
-        for (Map.Entry<BlockPos, ChargeNode> addedNode : added.entrySet()) {
-            ChargeManager.forConnections(worldObj, addedNode.getKey(), (conPos, conDef) -> {
+        for (ChargeNode addedNode : added) {
+            ChargeManager.forConnections(worldObj, addedNode.pos, (conPos, conDef) -> {
                 if (registerChargeNode(worldObj, conPos, conDef))
                     newNodes.add(conPos);
             });
-            if (addedNode.getValue().isGraphNull())
-                addedNode.getValue().constructGraph();
+            if (addedNode.isGraphNull())
+                addedNode.constructGraph();
+        }
+
+        // Gather up the charge requested this tick so each graph can settle it in one draw
+        for (ChargeNode node : requestingNodes) {
+            if (node.chargeGraph.isActive())
+                node.chargeGraph.requestedCharge += node.requestedCharge;
         }
 
         // Remove discarded graphs and tick what's left
         chargeGraphs.removeIf(g -> g.invalid);
-        chargeGraphs.forEach(ChargeGraph::tick);
+        List<ChargeGraph> awake = new ArrayList<>();
+        for (ChargeGraph graph : chargeGraphs) {
+            if (!graph.sleeping)
+                awake.add(graph);
+            else if (ticks % PARK_CHECK_INTERVAL == 0)
+                graph.updateParking(worldObj);
+        }
+        // Graphs never share batteries, so the balancing can be split up between threads,
+        // everything else is done back on the main thread in the same order every time
+        ForkJoinPool pool = awake.size() >= PARALLEL_THRESHOLD ? ChargeManager.getWorkerPool() : null;
+        if (pool != null)
+            pool.invoke(new BalanceTask(awake, 0, awake.size()));
+        else
+            awake.forEach(ChargeGraph::tickBatteries);
+        awake.forEach(ChargeGraph::finishTick);
+
+        requestingNodes.forEach(ChargeNode::settleRequest);
+        requestingNodes.clear();
+
+        // Write out the batteries that changed, once each
+        for (ChargeNode node : dirtyBatteries) {
+            if (!node.invalid && node.chargeBattery != null)
+                batterySaveData.updateBatteryRecord(node.packedPos, node.chargeBattery);
+        }
+        dirtyBatteries.clear();
 
         if (!newNodes.isEmpty())
             printDebug("Nodes queued: {0}", newNodes.size());
+
+        lastTickTime = System.nanoTime() - start;
+        averageTickTime = (averageTickTime * 49D + lastTickTime) / 50D;
+    }
+
+    public Collection<ChargeGraph> getGraphs() {
+        return Collections.unmodifiableSet(chargeGraphs);
+    }
+
+    public int getNodeCount() {
+        return chargeNodes.size();
+    }
+
+    public int getQueueDepth() {
+        return chargeQueue.size();
+    }
+
+    /**
+     * @return the time spent in the last tick, in nanoseconds
+     */
+    public long getLastTickTime() {
+        return lastTickTime;
+    }
+
+    /**
+     * @return the moving average of the time spent per tick, in nanoseconds
+     */
+    public double getAverageTickTime() {
+        return averageTickTime;
+    }
+
+    public List<String> getDebugOutput() {
+        List<String> lines = new ArrayList<>();
+        int sleeping = 0;
+        int parked = 0;
+        int batteries = 0;
+        double draw = 0.0;
+        for (ChargeGraph graph : chargeGraphs) {
+            if (graph.isSleeping())
+                sleeping++;
+            if (graph.isParked())
+                parked++;
+            batteries += graph.getBatteryCount();
+            draw += graph.getLastTickDraw();
+        }
+        lines.add(String.format("Charge Network: nodes=%d, batteries=%d, queued=%d", getNodeCount(), batteries, getQueueDepth()));
+        lines.add(String.format("Graphs: total=%d, sleeping=%d, parked=%d", chargeGraphs.size(), sleeping, parked));
+        lines.add(String.format("Tick: last=%.3fms, avg=%.3fms, draw=%.2f/t", lastTickTime / 1e6, averageTickTime / 1e6, draw));
+        lines.add(String.format("Rebuilds: merges=%d (%.3fms), splits=%d (%.3fms)", graphMerges, graphMergeTime / 1e6, graphSplits, graphSplitTime / 1e6));
+        chargeGraphs.stream()
+                .sorted(Comparator.comparingDouble(ChargeGraph::getAverageTickTime).reversed())
+                .limit(10)
+                .forEach(g -> lines.add(String.format("  %s at %s: draw=%.2f/t, avg=%.3fms%s",
+                        g, g.getAnchor(), g.getLastTickDraw(), g.getAverageTickTime() / 1e6,
+                        g.isParked() ? ", parked" : g.isSleeping() ? ", sleeping" : "")));
+        return lines;
     }
 
     /**
      * Add the node to the network and clean up any node that used to exist there
      */
-    private void insertNode(BlockPos pos, ChargeNode node) {
-        ChargeNode oldNode = chargeNodes.put(pos, node);
+    private void insertNode(ChargeNode node) {
+        ChargeNode oldNode = chargeNodes.put(node.packedPos, node);
 
         // update the battery in the save data tracker
         if (node.chargeBattery != null)
-            batterySaveData.initBattery(pos, node.chargeBattery);
+            batterySaveData.initBattery(node.packedPos, node.chargeBattery);
         else
-            batterySaveData.removeBattery(pos);
+            batterySaveData.removeBattery(node.packedPos);
 
         // clean up any preexisting node
         if (oldNode != null) {
             oldNode.invalid = true;
-            if (oldNode.chargeGraph.isActive()) {
-                node.chargeGraph = oldNode.chargeGraph;
-                node.chargeGraph.add(node);
+            ChargeGraph graph = oldNode.chargeGraph;
+            if (graph.isActive()) {
+                if (oldNode.chargeDef.getConnectType() == node.chargeDef.getConnectType()) {
+                    // same connections, so we can just swap the node in place
+                    graph.removeNode(oldNode);
+                    graph.add(node);
+                } else
+                    detachNode(graph, oldNode);
             }
             oldNode.chargeGraph = NULL_GRAPH;
         }
     }
 
-    private void deleteNode(BlockPos pos) {
+    private void deleteNode(long pos) {
         ChargeNode chargeNode = chargeNodes.remove(pos);
         if (chargeNode != null) {
             chargeNode.invalid = true;
-            chargeNode.chargeGraph.destroy(true);
+            if (chargeNode.chargeGraph.isActive())
+                detachNode(chargeNode.chargeGraph, chargeNode);
         }
         batterySaveData.removeBattery(pos);
     }
 
+    /**
+     * Removes the node from the graph and splits off any parts of the graph that are no longer connected.
+     *
+     * Rather than rebuilding the whole graph, we search outward from each former neighbor in lockstep.
+     * Searches that meet are merged and a search that runs out of nodes has found a detached component.
+     * Once only one search is left we can stop, whatever it hasn't visited yet keeps the original graph.
+     * This means the work done is proportional to the size of the detached parts, not the whole graph.
+     */
+    private void detachNode(ChargeGraph graph, ChargeNode node) {
+        long start = System.nanoTime();
+        graph.removeNode(node);
+        node.chargeGraph = NULL_GRAPH;
+
+        List<ChargeNode> neighbors = new ArrayList<>();
+        node.forConnections(n -> {
+            if (n.chargeGraph == graph)
+                neighbors.add(n);
+        });
+
+        if (neighbors.size() > 1) {
+            List<Set<ChargeNode>> detached = findDetachedComponents(graph, neighbors);
+            if (!detached.isEmpty())
+                graphSplits++;
+            for (Set<ChargeNode> component : detached) {
+                component.forEach(graph::removeNode);
+                if (component.size() > 1) {
+                    ChargeGraph newGraph = new ChargeGraph();
+                    chargeGraphs.add(newGraph);
+                    newGraph.addAll(component);
+                    printDebug("Splitting Graph: {0}->{1}", node.pos, newGraph);
+                } else
+                    component.forEach(n -> n.chargeGraph = NULL_GRAPH);
+            }
+        }
+
+        // a single node doesn't make a graph
+        if (graph.size() <= 1)
+            graph.destroy(true);
+
+        graphSplitTime += System.nanoTime() - start;
+    }
+
+    private List<Set<ChargeNode>> findDetachedComponents(ChargeGraph graph, List<ChargeNode> seeds) {
+        Map<ChargeNode, ComponentSearch> owners = new HashMap<>();
+        List<ComponentSearch> searches = new ArrayList<>();
+        for (ChargeNode seed : seeds) {
+            ComponentSearch search = new ComponentSearch(seed);
+            owners.put(seed, search);
+            searches.add(search);
+        }
+
+        List<Set<ChargeNode>> detached = new ArrayList<>();
+        int running = searches.size();
+        while (running > 1) {
+            for (ComponentSearch search : searches) {
+                if (running <= 1)
+                    break;
+                if (search.finished || search.mergedInto != null)
+                    continue;
+                ChargeNode next = search.queue.poll();
+                if (next == null) {
+                    search.finished = true;
+                    detached.add(search.visited);
+                    running--;
+                    continue;
+                }
+                int[] merges = {0};
+                next.forConnections(n -> {
+                    if (n.chargeGraph != graph)
+                        return;
+                    ComponentSearch self = search.root();
+                    ComponentSearch owner = owners.get(n);
+                    if (owner == null) {
+                        owners.put(n, self);
+                        self.visited.add(n);
+                        self.queue.addLast(n);
+                    } else {
+                        ComponentSearch other = owner.root();
+                        if (other != self) {
+                            self.merge(other);
+                            merges[0]++;
+                        }
+                    }
+                });
+                running -= merges[0];
+            }
+        }
+        return detached;
+    }
+
     /**
      * Queues the node to be added to the network
      */
     public boolean registerChargeNode(World world, BlockPos pos, IChargeBlock.ChargeDef chargeDef) {
         if (!nodeMatches(pos, chargeDef)) {
             printDebug("Registering Node: {0}->{1}", pos, chargeDef);
-            chargeQueue.put(pos, new ChargeNode(pos, chargeDef, chargeDef.getBattery(world, pos)));
+            chargeQueue.put(pos.toLong(), new ChargeNode(pos, chargeDef, chargeDef.getBattery(world, pos)));
             return true;
         }
         return false;
@@ -144,16 +353,17 @@ public class ChargeNetwork {
      * Queues the node to be removed to the network
      */
     public void deregisterChargeNode(BlockPos pos) {
-        chargeQueue.put(pos, null);
+        chargeQueue.put(pos.toLong(), null);
     }
 
     public boolean isUndefined(BlockPos pos) {
-        ChargeNode chargeNode = chargeNodes.get(pos);
-        return chargeNode == null || chargeNode.isGraphNull() || !chargeQueue.containsKey(pos);
+        long packedPos = pos.toLong();
+        ChargeNode chargeNode = chargeNodes.get(packedPos);
+        return chargeNode == null || chargeNode.isGraphNull() || !chargeQueue.containsKey(packedPos);
     }
 
     public boolean isReady(BlockPos pos) {
-        ChargeNode chargeNode = chargeNodes.get(pos);
+        ChargeNode chargeNode = chargeNodes.get(pos.toLong());
         return chargeNode != null && !chargeNode.isGraphNull();
     }
 
@@ -165,9 +375,9 @@ public class ChargeNetwork {
      * Get any node for the position and add it to the charge network/graphs if it isn't already
      */
     public ChargeNode getNode(BlockPos pos) {
-        ChargeNode node = chargeNodes.get(pos);
+        ChargeNode node = chargeNodes.get(pos.toLong());
         if (node != null && node.invalid) {
-            deleteNode(pos);
+            deleteNode(pos.toLong());
             node = null;
         }
         if (node == null) {
@@ -178,7 +388,7 @@ public class ChargeNetwork {
                     IChargeBlock.ChargeDef chargeDef = ((IChargeBlock) state.getBlock()).getChargeDef(state, worldObj, pos);
                     if (chargeDef != null) {
                         node = new ChargeNode(pos, chargeDef, chargeDef.getBattery(worldObj, pos));
-                        insertNode(pos, node);
+                        insertNode(node);
                         if (node.isGraphNull())
                             node.constructGraph();
                     }
@@ -191,28 +401,46 @@ public class ChargeNetwork {
     }
 
     public ChargeNode getNodeSafe(BlockPos pos) {
-        ChargeNode node = chargeNodes.get(pos);
+        ChargeNode node = chargeNodes.get(pos.toLong());
         return node == null ? NULL_NODE : node;
     }
 
     public boolean nodeMatches(BlockPos pos, IChargeBlock.ChargeDef chargeDef) {
-        ChargeNode node = chargeNodes.get(pos);
+        ChargeNode node = chargeNodes.get(pos.toLong());
         return node != null && !node.isNull() && !node.invalid && node.chargeDef == chargeDef;
     }
 
     public IChargeBlock.ChargeBattery getTileBattery(BlockPos pos, Supplier<IChargeBlock.ChargeBattery> supplier) {
-        ChargeNetwork.ChargeNode node = chargeNodes.get(pos);
+        ChargeNetwork.ChargeNode node = chargeNodes.get(pos.toLong());
         IChargeBlock.ChargeBattery battery = node == null ? null : node.getBattery();
         return battery == null ? supplier.get() : battery;
     }
 
     public class ChargeGraph extends ForwardingSet<ChargeNode> {
         private final Set<ChargeNode> chargeNodes = new HashSet<>();
-        private final Map<ChargeNode, IChargeBlock.ChargeBattery> chargeBatteries = new LinkedHashMap<>();
+        private final Map<ChargeNode, BatteryState> chargeBatteries = new LinkedHashMap<>();
         private boolean invalid;
         private double totalMaintenanceCost;
         private double chargeUsedThisTick;
         private double averageUsagePerTick;
+        private double requestedCharge;
+        private double settledRatio;
+        private double totalCharge;
+        private double totalCapacity;
+        private double totalAvailableCharge;
+        private double totalEfficiency;
+        private int infiniteBatteries;
+        private GraphSnapshot snapshot = GraphSnapshot.EMPTY;
+        private long snapshotTick = -1;
+        private boolean disturbed = true;
+        private boolean modifying;
+        private boolean sleeping;
+        private boolean parked;
+        private int idleTicks;
+        private long lastTick = ticks;
+        private boolean batteriesChanged;
+        private double lastTickDraw;
+        private double averageTickTime;
 
         @Override
         protected Set<ChargeNode> delegate() {
@@ -221,24 +449,39 @@ public class ChargeNetwork {
 
         @Override
         public boolean add(ChargeNode chargeNode) {
+            wake();
             boolean added = super.add(chargeNode);
             if (added)
                 totalMaintenanceCost += chargeNode.chargeDef.getMaintenanceCost();
             chargeNode.chargeGraph = this;
-            if (chargeNode.chargeBattery != null)
-                chargeBatteries.put(chargeNode, chargeNode.chargeBattery);
-            else {
-                chargeBatteries.remove(chargeNode);
-                batterySaveData.removeBattery(chargeNode.pos);
-            }
+            removeBatteryState(chargeNode);
+            if (chargeNode.chargeBattery != null) {
+                BatteryState state = new BatteryState(chargeNode.chargeBattery);
+                chargeBatteries.put(chargeNode, state);
+                state.attach();
+            } else
+                batterySaveData.removeBattery(chargeNode.packedPos);
             return added;
         }
 
+        private void removeBatteryState(ChargeNode chargeNode) {
+            BatteryState state = chargeBatteries.remove(chargeNode);
+            if (state != null)
+                state.detach();
+        }
+
         @Override
         public boolean addAll(Collection<? extends ChargeNode> collection) {
             return standardAddAll(collection);
         }
 
+        private void removeNode(ChargeNode chargeNode) {
+            wake();
+            if (chargeNodes.remove(chargeNode))
+                totalMaintenanceCost -= chargeNode.chargeDef.getMaintenanceCost();
+            removeBatteryState(chargeNode);
+        }
+
         @Override
         public boolean remove(Object object) {
             throw new UnsupportedOperationException();
@@ -267,12 +510,15 @@ public class ChargeNetwork {
         private void destroy(boolean touchNodes) {
             if (isActive()) {
                 printDebug("Destroying graph: {0}", this);
+                catchUp();
                 invalid = true;
                 totalMaintenanceCost = 0.0;
                 if (touchNodes) {
                     forEach(n -> n.chargeGraph = NULL_GRAPH);
                 }
+                chargeBatteries.values().forEach(BatteryState::detach);
                 chargeBatteries.clear();
+                resetTotals();
                 super.clear();
                 chargeGraphs.remove(this);
             }
@@ -283,38 +529,197 @@ public class ChargeNetwork {
             throw new UnsupportedOperationException();
         }
 
-        private void tick() {
-            removeCharge(totalMaintenanceCost);
+        /**
+         * Settles and balances the batteries. This only touches the graph and its own batteries,
+         * so it may be run off the main thread, see {@link BalanceTask}.
+         */
+        private void tickBatteries() {
+            long start = System.nanoTime();
+            modifying = true;
+            // settle the maintenance cost and all the queued requests in one pass
+            double requested = totalMaintenanceCost + requestedCharge;
+            requestedCharge = 0.0;
+            double removed = removeCharge(requested, getNetworkEfficiency());
+            settledRatio = requested > 0.0 ? removed / requested : 1.0;
 
             // balance the charge in all the batteries in the graph
-            double capacity = getCapacity();
-            if (capacity > 0.0) {
-                final double chargeLevel = getCharge() / capacity;
-                chargeBatteries.entrySet().forEach(b -> {
-                    b.getValue().setCharge(chargeLevel * b.getValue().getCapacity());
-                    batterySaveData.updateBatteryRecord(b.getKey().pos, b.getValue());
-                });
-            }
+            batteriesChanged = balance(getCharge()) || removed > 0.0;
+            modifying = false;
 
             // track usage patterns
             averageUsagePerTick = (averageUsagePerTick * 49D + chargeUsedThisTick) / 50D;
+            lastTickDraw = chargeUsedThisTick;
             chargeUsedThisTick = 0.0;
+
+            // the running totals can drift a little over time, so resum them while we are here
+            resetTotals();
+            chargeBatteries.values().forEach(BatteryState::attach);
+            lastTick = ticks;
+            averageTickTime = (averageTickTime * 49D + (System.nanoTime() - start)) / 50D;
+        }
+
+        /**
+         * The rest of the tick, run on the main thread once all the graphs have been balanced.
+         */
+        private void finishTick() {
+            if (batteriesChanged)
+                dirtyBatteries.addAll(chargeBatteries.keySet());
+            batteriesChanged = false;
+
+            // Nothing but our own draws and balancing has touched the batteries,
+            // so they are still balanced and the next tick will look exactly like this one.
+            if (disturbed) {
+                disturbed = false;
+                idleTicks = 0;
+            } else if (++idleTicks >= TICKS_TO_SLEEP) {
+                sleeping = true;
+                printDebug("Graph going to sleep: {0}", this);
+            }
+        }
+
+        /**
+         * Doesn't mark the batteries dirty, the caller has to take care of that.
+         *
+         * @return true if the batteries were changed
+         */
+        private boolean balance(double charge) {
+            double capacity = getCapacity();
+            if (capacity <= 0.0)
+                return false;
+            final double chargeLevel = charge / capacity;
+            chargeBatteries.values().forEach(state -> state.battery.setCharge(chargeLevel * state.battery.getCapacity()));
+            return true;
+        }
+
+        /**
+         * Called whenever something other than the graph itself uses or changes the charge in the graph.
+         */
+        private void wake() {
+            disturbed = true;
+            if (sleeping) {
+                catchUp();
+                sleeping = false;
+                parked = false;
+                idleTicks = 0;
+                printDebug("Graph waking up: {0}", this);
+            }
+        }
+
+        /**
+         * While asleep, the only thing happening to the graph is the maintenance cost being drawn each tick.
+         * Rather than doing that every tick we apply it in one go whenever someone looks at the graph.
+         * Parked graphs are entirely in unloaded chunks and are frozen instead.
+         */
+        private void catchUp() {
+            long elapsed = ticks - lastTick;
+            if (!sleeping || elapsed <= 0)
+                return;
+            lastTick = ticks;
+            if (parked)
+                return;
+
+            double drawn = 0.0;
+            if (infiniteBatteries == 0) {
+                double debt = totalMaintenanceCost * elapsed / getNetworkEfficiency();
+                // the batteries could not have delivered more than their max draw on each tick
+                double maxDraw = 0.0;
+                for (BatteryState state : chargeBatteries.values()) {
+                    maxDraw += state.battery.getMaxDraw();
+                }
+                drawn = Math.min(Math.min(debt, totalCharge), maxDraw * elapsed);
+                if (drawn > 0.0) {
+                    modifying = true;
+                    if (balance(totalCharge - drawn))
+                        dirtyBatteries.addAll(chargeBatteries.keySet());
+                    modifying = false;
+                }
+            }
+
+            // replay the moving average as if we had drawn the same amount every tick
+            double decay = Math.pow(49D / 50D, elapsed);
+            averageUsagePerTick = averageUsagePerTick * decay + (drawn / elapsed) * (1.0 - decay);
+        }
+
+        private void updateParking(World world) {
+            boolean unloaded = chargeNodes.stream().noneMatch(n -> world.isBlockLoaded(n.pos));
+            if (unloaded != parked) {
+                catchUp();
+                parked = unloaded;
+                printDebug(parked ? "Graph parked: {0}" : "Graph unparked: {0}", this);
+            }
+        }
+
+        public boolean isSleeping() {
+            return sleeping;
+        }
+
+        public boolean isParked() {
+            return parked;
+        }
+
+        public int getBatteryCount() {
+            return chargeBatteries.size();
+        }
+
+        /**
+         * @return the charge drawn from the batteries during the last tick
+         */
+        public double getLastTickDraw() {
+            return sleeping ? 0.0 : lastTickDraw;
+        }
+
+        /**
+         * @return the moving average of the time spent ticking this graph, in nanoseconds
+         */
+        public double getAverageTickTime() {
+            return sleeping ? 0.0 : averageTickTime;
+        }
+
+        /**
+         * @return the position of some node in the graph, useful for finding it in the world
+         */
+        @Nullable
+        public BlockPos getAnchor() {
+            return chargeNodes.isEmpty() ? null : chargeNodes.iterator().next().pos;
+        }
+
+        private void resetTotals() {
+            totalCharge = 0.0;
+            totalCapacity = 0.0;
+            totalAvailableCharge = 0.0;
+            totalEfficiency = 0.0;
+            infiniteBatteries = 0;
+        }
+
+        /**
+         * Returns the state of the graph, taken the first time it is asked for after a tick
+         * and reused until the graph ticks again.
+         */
+        public GraphSnapshot getSnapshot() {
+            catchUp();
+            if (snapshotTick != lastTick) {
+                snapshot = new GraphSnapshot(this);
+                snapshotTick = lastTick;
+            }
+            return snapshot;
         }
 
         public double getCharge() {
-            return chargeBatteries.values().stream().mapToDouble(IChargeBlock.ChargeBattery::getCharge).sum();
+            catchUp();
+            return totalCharge;
         }
 
         public double getCapacity() {
-            return chargeBatteries.values().stream().mapToDouble(IChargeBlock.ChargeBattery::getCapacity).sum();
+            return totalCapacity;
         }
 
         public double getMaxNetworkDraw() {
-            return chargeBatteries.values().stream().mapToDouble(IChargeBlock.ChargeBattery::getAvailableCharge).sum();
+            catchUp();
+            return totalAvailableCharge;
         }
 
         public double getNetworkEfficiency() {
-            return chargeBatteries.values().stream().mapToDouble(IChargeBlock.ChargeBattery::getEfficiency).average().orElse(1.0);
+            return chargeBatteries.isEmpty() ? 1.0 : totalEfficiency / chargeBatteries.size();
         }
 
         public int getComparatorOutput() {
@@ -327,6 +732,15 @@ public class ChargeNetwork {
         }
 
         public double getAverageUsagePerTick() {
+            catchUp();
+            return averageUsagePerTick;
+        }
+
+        /**
+         * The moving average as it was last updated, without catching up a sleeping graph first.
+         * Lets the metrics log look at a graph without waking its maintenance.
+         */
+        double getStoredAverageUsagePerTick() {
             return averageUsagePerTick;
         }
 
@@ -340,7 +754,7 @@ public class ChargeNetwork {
         }
 
         public boolean isInfinite() {
-            return chargeBatteries.values().stream().anyMatch(IChargeBlock.ChargeBattery::isInfinite);
+            return infiniteBatteries > 0;
         }
 
         public boolean isActive() {
@@ -358,6 +772,7 @@ public class ChargeNetwork {
          * @return true if charge could be removed in full
          */
         public boolean useCharge(double amount) {
+            wake();
             double efficiency = getNetworkEfficiency();
             if (getMaxNetworkDraw() >= amount / efficiency) {
                 removeCharge(amount, efficiency);
@@ -373,6 +788,7 @@ public class ChargeNetwork {
          * @return charge removed
          */
         public double removeCharge(double desiredAmount) {
+            wake();
             return removeCharge(desiredAmount, getNetworkEfficiency());
         }
 
@@ -385,9 +801,11 @@ public class ChargeNetwork {
         private double removeCharge(double desiredAmount, double efficiency) {
             final double amountToDraw = desiredAmount / efficiency;
             double amountNeeded = amountToDraw;
-            for (Map.Entry<ChargeNode, IChargeBlock.ChargeBattery> battery : chargeBatteries.entrySet()) {
-                amountNeeded -= battery.getValue().removeCharge(amountNeeded);
-                batterySaveData.updateBatteryRecord(battery.getKey().pos, battery.getValue());
+            for (Map.Entry<ChargeNode, BatteryState> battery : chargeBatteries.entrySet()) {
+                amountNeeded -= battery.getValue().battery.removeCharge(amountNeeded);
+                // while ticking the balancing afterwards marks them all
+                if (!modifying)
+                    dirtyBatteries.add(battery.getKey());
                 if (amountNeeded <= 0.0)
                     break;
             }
@@ -396,10 +814,182 @@ public class ChargeNetwork {
             return chargeRemoved * efficiency;
         }
 
+        /**
+         * Graphs change membership constantly, so they are compared by identity rather than by content.
+         */
+        @Override
+        public boolean equals(@Nullable Object object) {
+            return this == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
         @Override
         public String toString() {
             return String.format("ChargeGraph{s=%d,b=%d}", size(), chargeBatteries.size());
         }
+
+        /**
+         * Tracks what a battery currently contributes to the graph totals,
+         * so that a change to one battery can be applied without resumming the rest.
+         */
+        private class BatteryState {
+            private final IChargeBlock.ChargeBattery battery;
+            private final Runnable listener = this::refresh;
+            private double charge;
+            private double capacity;
+            private double availableCharge;
+            private double efficiency;
+            private boolean infinite;
+
+            private BatteryState(IChargeBlock.ChargeBattery battery) {
+                this.battery = battery;
+            }
+
+            private void attach() {
+                charge = battery.getCharge();
+                capacity = battery.getCapacity();
+                availableCharge = battery.getAvailableCharge();
+                efficiency = battery.getEfficiency();
+                infinite = battery.isInfinite();
+
+                totalCharge += charge;
+                totalCapacity += capacity;
+                totalAvailableCharge += availableCharge;
+                totalEfficiency += efficiency;
+                if (infinite)
+                    infiniteBatteries++;
+                battery.setChangeListener(listener);
+            }
+
+            private void detach() {
+                totalCharge -= charge;
+                totalCapacity -= capacity;
+                totalAvailableCharge -= availableCharge;
+                totalEfficiency -= efficiency;
+                if (infinite)
+                    infiniteBatteries--;
+                battery.removeChangeListener(listener);
+            }
+
+            private void refresh() {
+                detach();
+                attach();
+                if (!modifying)
+                    wake();
+            }
+        }
+    }
+
+    /**
+     * An immutable copy of the graph totals, taken at most once per tick.
+     */
+    public static final class GraphSnapshot {
+        public static final GraphSnapshot EMPTY = new GraphSnapshot();
+        public final int size;
+        public final int batteries;
+        public final double charge;
+        public final double capacity;
+        public final double maxNetworkDraw;
+        public final double networkEfficiency;
+        public final double maintenanceCost;
+        public final double averageUsagePerTick;
+        public final boolean infinite;
+
+        private GraphSnapshot() {
+            size = 0;
+            batteries = 0;
+            charge = 0.0;
+            capacity = 0.0;
+            maxNetworkDraw = 0.0;
+            networkEfficiency = 1.0;
+            maintenanceCost = 0.0;
+            averageUsagePerTick = 0.0;
+            infinite = false;
+        }
+
+        private GraphSnapshot(ChargeGraph graph) {
+            size = graph.size();
+            batteries = graph.chargeBatteries.size();
+            charge = graph.getCharge();
+            capacity = graph.getCapacity();
+            maxNetworkDraw = graph.getMaxNetworkDraw();
+            networkEfficiency = graph.getNetworkEfficiency();
+            maintenanceCost = graph.getMaintenanceCost();
+            averageUsagePerTick = graph.getAverageUsagePerTick();
+            infinite = graph.isInfinite();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("GraphSnapshot{s=%d,b=%d,c=%.2f/%.2f}", size, batteries, charge, capacity);
+        }
+    }
+
+    /**
+     * Balances a range of graphs, splitting it in half until each task has a single graph.
+     */
+    private static final class BalanceTask extends RecursiveAction {
+        private final List<ChargeGraph> graphs;
+        private final int from;
+        private final int to;
+
+        private BalanceTask(List<ChargeGraph> graphs, int from, int to) {
+            this.graphs = graphs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from)
+                    graphs.get(from).tickBatteries();
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new BalanceTask(graphs, from, mid), new BalanceTask(graphs, mid, to));
+        }
+    }
+
+    /**
+     * A breadth first search over a single graph, used to find components when splitting a graph.
+     */
+    private class ComponentSearch {
+        private Set<ChargeNode> visited = new HashSet<>();
+        private Deque<ChargeNode> queue = new ArrayDeque<>();
+        @Nullable
+        private ComponentSearch mergedInto;
+        private boolean finished;
+
+        private ComponentSearch(ChargeNode seed) {
+            visited.add(seed);
+            queue.add(seed);
+        }
+
+        private ComponentSearch root() {
+            ComponentSearch search = this;
+            while (search.mergedInto != null) {
+                search = search.mergedInto;
+            }
+            return search;
+        }
+
+        /**
+         * Folds the smaller of the two searches into the larger one.
+         */
+        private void merge(ComponentSearch other) {
+            ComponentSearch big = visited.size() >= other.visited.size() ? this : other;
+            ComponentSearch small = big == this ? other : this;
+            big.visited.addAll(small.visited);
+            big.queue.addAll(small.queue);
+            small.visited = Collections.emptySet();
+            small.queue = new ArrayDeque<>();
+            small.mergedInto = big;
+        }
     }
 
     private class NullGraph extends ChargeGraph {
@@ -423,11 +1013,13 @@ public class ChargeNetwork {
         @Nullable
         protected final IChargeBlock.ChargeBattery chargeBattery;
         private final BlockPos pos;
+        private final long packedPos;
         private final IChargeBlock.ChargeDef chargeDef;
         private ChargeGraph chargeGraph = NULL_GRAPH;
         private boolean invalid;
         private boolean recording;
         private double chargeUsedRecorded;
+        private double requestedCharge;
         private int ticksToRecord;
         private int ticksRecorded;
         private BiConsumer<ChargeNode, Double> usageConsumer;
@@ -435,6 +1027,7 @@ public class ChargeNetwork {
 
         private ChargeNode(BlockPos pos, IChargeBlock.ChargeDef chargeDef, @Nullable IChargeBlock.ChargeBattery chargeBattery) {
             this.pos = pos;
+            this.packedPos = pos.toLong();
             this.chargeDef = chargeDef;
             this.chargeBattery = chargeBattery;
         }
@@ -444,13 +1037,12 @@ public class ChargeNetwork {
         }
 
         private void forConnections(Consumer<ChargeNode> action) {
-            Map<BlockPos, EnumSet<IChargeBlock.ConnectType>> possibleConnections = chargeDef.getConnectType().getPossibleConnectionLocations(pos);
-            for (Map.Entry<BlockPos, EnumSet<IChargeBlock.ConnectType>> connection : possibleConnections.entrySet()) {
-                ChargeNode other = chargeNodes.get(connection.getKey());
-                if (other != null && connection.getValue().contains(other.chargeDef.getConnectType())
-                        && other.chargeDef.getConnectType().getPossibleConnectionLocations(connection.getKey()).get(pos).contains(chargeDef.getConnectType())) {
+            IChargeBlock.ConnectType connectType = chargeDef.getConnectType();
+            for (int i = 0; i < connectType.getConnectionCount(); i++) {
+                long conPos = connectType.getConnectionLocation(packedPos, i);
+                ChargeNode other = chargeNodes.get(conPos);
+                if (other != null && connectType.canConnect(i, other.chargeDef.getConnectType()))
                     action.accept(other);
-                }
             }
         }
 
@@ -500,11 +1092,8 @@ public class ChargeNetwork {
          */
         public boolean useCharge(double amount) {
             boolean removed = chargeGraph.useCharge(amount);
-            if (removed) {
-                listeners.forEach(c -> c.accept(this, amount));
-                if (recording)
-                    chargeUsedRecorded += amount;
-            }
+            if (removed)
+                onChargeUsed(amount);
             return removed;
         }
 
@@ -513,12 +1102,35 @@ public class ChargeNetwork {
          */
         public double removeCharge(double desiredAmount) {
             double removed = chargeGraph.removeCharge(desiredAmount);
-            listeners.forEach(c -> c.accept(this, removed));
-            if (recording)
-                chargeUsedRecorded += removed;
+            onChargeUsed(removed);
             return removed;
         }
 
+        /**
+         * Queues a request for charge that will be settled along with all other requests
+         * on the graph at the end of the tick. If the graph can't supply everything requested,
+         * every request receives the same fraction of what it asked for.
+         *
+         * Use {@link #useCharge(double)} or {@link #removeCharge(double)} if you need to know the result immediately.
+         */
+        public void requestCharge(double amount) {
+            chargeGraph.wake();
+            requestedCharge += amount;
+            requestingNodes.add(this);
+        }
+
+        private void settleRequest() {
+            double received = requestedCharge * chargeGraph.settledRatio;
+            requestedCharge = 0.0;
+            onChargeUsed(received);
+        }
+
+        private void onChargeUsed(double amount) {
+            listeners.forEach(c -> c.accept(this, amount));
+            if (recording)
+                chargeUsedRecorded += amount;
+        }
+
         public boolean isNull() {
             return false;
         }
@@ -527,41 +1139,50 @@ public class ChargeNetwork {
             return chargeGraph.isNull();
         }
 
+        /**
+         * Joins this node to the graphs of its neighbors.
+         *
+         * Only unattached nodes are searched, existing graphs are merged into the largest one.
+         */
         protected void constructGraph() {
+            long start = System.nanoTime();
             Set<ChargeNode> visitedNodes = new HashSet<>();
             visitedNodes.add(this);
-            Set<ChargeNode> nullNodes = new HashSet<>();
+            List<ChargeNode> nullNodes = new ArrayList<>();
             nullNodes.add(this);
             Deque<ChargeNode> nodeQueue = new ArrayDeque<>();
             nodeQueue.add(this);
-            TreeSet<ChargeGraph> graphs = new TreeSet<>(Comparator.comparingInt(ForwardingCollection::size));
-            graphs.add(chargeGraph);
+            Set<ChargeGraph> graphs = Collections.newSetFromMap(new IdentityHashMap<>());
             ChargeNode nextNode;
             while ((nextNode = nodeQueue.poll()) != null) {
                 nextNode.forConnections(n -> {
-                    if (!visitedNodes.contains(n) && (n.isGraphNull() || !graphs.contains(n.chargeGraph))) {
-                        if (n.isGraphNull())
+                    if (n.isGraphNull()) {
+                        if (visitedNodes.add(n)) {
                             nullNodes.add(n);
+                            nodeQueue.addLast(n);
+                        }
+                    } else
                         graphs.add(n.chargeGraph);
-                        visitedNodes.add(n);
-                        nodeQueue.addLast(n);
-                    }
                 });
             }
-            chargeGraph = graphs.pollLast();
-            if (chargeGraph.isNull() && nullNodes.size() > 1) {
-                chargeGraph = new ChargeGraph();
-                chargeGraphs.add(chargeGraph);
+            ChargeGraph target = graphs.stream().max(Comparator.comparingInt(ForwardingCollection::size)).orElse(NULL_GRAPH);
+            if (target.isNull()) {
+                if (nullNodes.size() <= 1)
+                    return;
+                target = new ChargeGraph();
+                chargeGraphs.add(target);
             }
-            if (chargeGraph.isActive()) {
-                int originalSize = chargeGraph.size();
-                chargeGraph.addAll(nullNodes);
-                for (ChargeGraph graph : graphs) {
-                    chargeGraph.addAll(graph);
+            int originalSize = target.size();
+            target.addAll(nullNodes);
+            for (ChargeGraph graph : graphs) {
+                if (graph != target) {
+                    target.addAll(graph);
+                    graph.destroy(false);
                 }
-                graphs.forEach(g -> g.destroy(false));
-                printDebug("Constructing Graph: {0}->{1} Added {2} nodes", pos, chargeGraph, chargeGraph.size() - originalSize);
             }
+            printDebug("Constructing Graph: {0}->{1} Added {2} nodes", pos, target, target.size() - originalSize);
+            graphMerges++;
+            graphMergeTime += System.nanoTime() - start;
         }
 
         @Override
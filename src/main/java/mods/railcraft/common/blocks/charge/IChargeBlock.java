@@ -13,6 +13,7 @@ package mods.railcraft.common.blocks.charge;
 import com.google.common.collect.ForwardingMap;
 import mods.railcraft.api.charge.IChargeBattery;
 import mods.railcraft.common.core.RailcraftConfig;
+import mods.railcraft.common.util.misc.PackedBlockPos;
 import net.minecraft.block.state.IBlockState;
 import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
@@ -48,79 +49,140 @@ public interface IChargeBlock {
 
     enum ConnectType {
 
-        TRACK {
-            @Override
-            public Map<BlockPos, EnumSet<ConnectType>> getPossibleConnectionLocations(BlockPos pos) {
-                int x = pos.getX();
-                int y = pos.getY();
-                int z = pos.getZ();
-                Map<BlockPos, EnumSet<ConnectType>> positions = new ConnectionMap();
+        TRACK,
+        WIRE,
+        BLOCK;
 
-                EnumSet<ConnectType> all = EnumSet.allOf(ConnectType.class);
-                EnumSet<ConnectType> notWire = EnumSet.complementOf(EnumSet.of(ConnectType.WIRE));
-                EnumSet<ConnectType> track = EnumSet.of(ConnectType.TRACK);
+        static {
+            int all = mask(TRACK, WIRE, BLOCK);
+            int notWire = mask(TRACK, BLOCK);
+            int notTrack = mask(WIRE, BLOCK);
+            int track = mask(TRACK);
 
-                positions.put(new BlockPos(x + 1, y, z), notWire);
-                positions.put(new BlockPos(x - 1, y, z), notWire);
+            TRACK.setConnections(new int[][]{
+                    {1, 0, 0, notWire},
+                    {-1, 0, 0, notWire},
 
-                positions.put(new BlockPos(x + 1, y + 1, z), track);
-                positions.put(new BlockPos(x + 1, y - 1, z), track);
+                    {1, 1, 0, track},
+                    {1, -1, 0, track},
 
-                positions.put(new BlockPos(x - 1, y + 1, z), track);
-                positions.put(new BlockPos(x - 1, y - 1, z), track);
+                    {-1, 1, 0, track},
+                    {-1, -1, 0, track},
 
-                positions.put(new BlockPos(x, y - 1, z), all);
+                    {0, -1, 0, all},
 
-                positions.put(new BlockPos(x, y, z + 1), notWire);
-                positions.put(new BlockPos(x, y, z - 1), notWire);
+                    {0, 0, 1, notWire},
+                    {0, 0, -1, notWire},
 
-                positions.put(new BlockPos(x, y + 1, z + 1), track);
-                positions.put(new BlockPos(x, y - 1, z + 1), track);
+                    {0, 1, 1, track},
+                    {0, -1, 1, track},
 
-                positions.put(new BlockPos(x, y + 1, z - 1), track);
-                positions.put(new BlockPos(x, y - 1, z - 1), track);
-                return positions;
-            }
+                    {0, 1, -1, track},
+                    {0, -1, -1, track},
+            });
+
+            WIRE.setConnections(new int[][]{
+                    {1, 0, 0, notTrack},
+                    {-1, 0, 0, notTrack},
+                    {0, 1, 0, all},
+                    {0, -1, 0, notTrack},
+                    {0, 0, 1, notTrack},
+                    {0, 0, -1, notTrack},
+            });
 
-        },
-        WIRE {
-            @Override
-            public Map<BlockPos, EnumSet<ConnectType>> getPossibleConnectionLocations(BlockPos pos) {
-                int x = pos.getX();
-                int y = pos.getY();
-                int z = pos.getZ();
-                Map<BlockPos, EnumSet<ConnectType>> positions = new ConnectionMap();
-
-                EnumSet<ConnectType> all = EnumSet.allOf(ConnectType.class);
-                EnumSet<ConnectType> notTrack = EnumSet.complementOf(EnumSet.of(ConnectType.TRACK));
-
-                positions.put(new BlockPos(x + 1, y, z), notTrack);
-                positions.put(new BlockPos(x - 1, y, z), notTrack);
-                positions.put(new BlockPos(x, y + 1, z), all);
-                positions.put(new BlockPos(x, y - 1, z), notTrack);
-                positions.put(new BlockPos(x, y, z + 1), notTrack);
-                positions.put(new BlockPos(x, y, z - 1), notTrack);
-                return positions;
+            int[][] blockConnections = new int[EnumFacing.VALUES.length][];
+            for (EnumFacing facing : EnumFacing.VALUES) {
+                blockConnections[facing.ordinal()] = new int[]{facing.getFrontOffsetX(), facing.getFrontOffsetY(), facing.getFrontOffsetZ(), all};
             }
+            BLOCK.setConnections(blockConnections);
+
+            // a connection only exists if both sides agree on it, so work that out once up front
+            for (ConnectType type : values()) {
+                type.connects = new boolean[type.offsetX.length][values().length];
+                for (int i = 0; i < type.offsetX.length; i++) {
+                    for (ConnectType other : values()) {
+                        int reverse = other.indexOf(-type.offsetX[i], -type.offsetY[i], -type.offsetZ[i]);
+                        type.connects[i][other.ordinal()] = (type.accepts[i] & mask(other)) != 0
+                                && reverse >= 0 && (other.accepts[reverse] & mask(type)) != 0;
+                    }
+                }
+            }
+        }
 
-        },
-        BLOCK {
-            @Override
-            public Map<BlockPos, EnumSet<ConnectType>> getPossibleConnectionLocations(BlockPos pos) {
-                Map<BlockPos, EnumSet<ConnectType>> positions = new ConnectionMap();
+        private int[] offsetX;
+        private int[] offsetY;
+        private int[] offsetZ;
+        private int[] accepts;
+        private boolean[][] connects;
 
-                EnumSet<ConnectType> all = EnumSet.allOf(ConnectType.class);
+        private static int mask(ConnectType... types) {
+            int mask = 0;
+            for (ConnectType type : types) {
+                mask |= 1 << type.ordinal();
+            }
+            return mask;
+        }
 
-                for (EnumFacing facing : EnumFacing.VALUES) {
-                    positions.put(pos.offset(facing), all);
-                }
-                return positions;
+        private void setConnections(int[][] connections) {
+            offsetX = new int[connections.length];
+            offsetY = new int[connections.length];
+            offsetZ = new int[connections.length];
+            accepts = new int[connections.length];
+            for (int i = 0; i < connections.length; i++) {
+                offsetX[i] = connections[i][0];
+                offsetY[i] = connections[i][1];
+                offsetZ[i] = connections[i][2];
+                accepts[i] = connections[i][3];
+            }
+        }
+
+        private int indexOf(int x, int y, int z) {
+            for (int i = 0; i < offsetX.length; i++) {
+                if (offsetX[i] == x && offsetY[i] == y && offsetZ[i] == z)
+                    return i;
             }
+            return -1;
+        }
 
-        };
+        /**
+         * The number of locations this type can connect to.
+         * Use with {@link #getConnectionLocation(long, int)} and {@link #canConnect(int, ConnectType)}
+         * to walk the connections without allocating anything.
+         */
+        public int getConnectionCount() {
+            return offsetX.length;
+        }
+
+        /**
+         * @param pos   the packed position of the block, see {@link BlockPos#toLong()}
+         * @param index the connection index
+         * @return the packed position of the connection location
+         */
+        public long getConnectionLocation(long pos, int index) {
+            return PackedBlockPos.offset(pos, offsetX[index], offsetY[index], offsetZ[index]);
+        }
+
+        /**
+         * Returns whether a block of the other type at the given connection location
+         * would connect to us, taking into account the connections allowed by both sides.
+         */
+        public boolean canConnect(int index, ConnectType other) {
+            return connects[index][other.ordinal()];
+        }
 
         @Nonnull
-        public abstract Map<BlockPos, EnumSet<ConnectType>> getPossibleConnectionLocations(BlockPos pos);
+        public Map<BlockPos, EnumSet<ConnectType>> getPossibleConnectionLocations(BlockPos pos) {
+            Map<BlockPos, EnumSet<ConnectType>> positions = new ConnectionMap();
+            for (int i = 0; i < offsetX.length; i++) {
+                EnumSet<ConnectType> types = EnumSet.noneOf(ConnectType.class);
+                for (ConnectType type : values()) {
+                    if ((accepts[i] & mask(type)) != 0)
+                        types.add(type);
+                }
+                positions.put(pos.add(offsetX[i], offsetY[i], offsetZ[i]), types);
+            }
+            return positions;
+        }
 
     }
 
@@ -210,6 +272,8 @@ public interface IChargeBlock {
 
         private boolean initialized;
         private double charge;
+        @Nullable
+        private Runnable changeListener;
 
         public boolean isInfinite() {
             return false;
@@ -239,6 +303,7 @@ public interface IChargeBlock {
 
         public void setCharge(double charge) {
             this.charge = charge;
+            markChanged();
         }
 
         @Override
@@ -248,6 +313,7 @@ public interface IChargeBlock {
 
         public void addCharge(double charge) {
             this.charge += charge;
+            markChanged();
         }
 
         /**
@@ -261,13 +327,33 @@ public interface IChargeBlock {
             if (availableCharge >= request) {
                 charge -= request;
 //                lastTickDraw += request;
+                markChanged();
                 return request;
             }
             charge -= availableCharge;
 //            lastTickDraw += availableCharge;
+            markChanged();
             return availableCharge;
         }
 
+        /**
+         * Must be called whenever the charge, draw or infinite state of the battery changes,
+         * the charge graph uses it to keep its totals up to date.
+         */
+        protected final void markChanged() {
+            if (changeListener != null)
+                changeListener.run();
+        }
+
+        void setChangeListener(Runnable listener) {
+            changeListener = listener;
+        }
+
+        void removeChangeListener(Runnable listener) {
+            if (changeListener == listener)
+                changeListener = null;
+        }
+
         public double getAvailableCharge() {
             return Math.min(charge, getMaxDraw());
         }
@@ -9,9 +9,12 @@
  -----------------------------------------------------------------------------*/
 package mods.railcraft.common.blocks.detector;
 
-import mods.railcraft.api.carts.CartToolsAPI;
 import mods.railcraft.common.blocks.RailcraftTickingTileEntity;
 import mods.railcraft.common.carts.CartConstants;
+import mods.railcraft.common.carts.CartRegistry;
+import mods.railcraft.common.carts.CartSpatialIndex;
+import mods.railcraft.common.carts.CartTools;
+import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.plugins.forge.PowerPlugin;
 import mods.railcraft.common.plugins.forge.WorldPlugin;
 import mods.railcraft.common.util.misc.Game;
@@ -29,17 +32,26 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.List;
 
 public class TileDetector extends RailcraftTickingTileEntity implements IGuiReturnHandler, ITileRouting {
 
     public static final float SENSITIVITY = 0.2f;
+    /**
+     * Any cart that can reach the blocks next to the detector is in a block within this distance.
+     */
+    private static final int WATCH_RADIUS = 2;
     public int powerState;
     @Nonnull
     public Detector detector = Detector.DUMMY;
     //    private boolean tested;
     private int powerDelay;
+    private final CartSpatialIndex.IWatcher watcher = this::wake;
+    @Nullable
+    private CartSpatialIndex watchedIndex;
+    private boolean sleeping;
 
     public Detector getDetector() {
         return detector;
@@ -48,6 +60,7 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
     public void setDetector(EnumDetector type) {
         this.detector = type.buildHandler();
         detector.setTile(this);
+        wake();
         if (worldObj != null) {
             markBlockForUpdate();
             notifyBlocksOfNeighborChange();
@@ -65,6 +78,7 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
     public void setRoutingTable(ItemStack stack) {
         if (detector instanceof ITileRouting)
             ((ITileRouting) detector).setRoutingTable(stack);
+        wake();
     }
 
     @Override
@@ -78,7 +92,7 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
     }
 
     public List<EntityMinecart> getCarts() {
-        return CartToolsAPI.getMinecartsOnAllSides(worldObj, getPos(), SENSITIVITY);
+        return CartTools.getMinecartsOnAllSides(worldObj, getPos(), SENSITIVITY);
     }
 
     public boolean blockActivated(EntityPlayer player) {
@@ -87,6 +101,60 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
 
     public void onNeighborBlockChange(Block block) {
         detector.onNeighborBlockChange(block);
+        wake();
+    }
+
+    /**
+     * Makes the detector check for carts again on its next update.
+     */
+    public void wake() {
+        sleeping = false;
+    }
+
+    /**
+     * Stops updating until a cart comes near or something about the detector changes.
+     * Only done when nothing would change if it kept testing: there are no carts that
+     * could be found and the output has settled.
+     */
+    private void trySleep() {
+        if (!RailcraftConfig.detectorsSleepWhenIdle())
+            return;
+        CartSpatialIndex index = CartRegistry.getIndex(worldObj);
+        if (index == null)
+            return;
+        if (watchedIndex != index) {
+            stopWatching();
+            index.watch(getPos(), WATCH_RADIUS, watcher);
+            watchedIndex = index;
+        }
+        if (!index.anyNear(getPos(), WATCH_RADIUS))
+            sleeping = true;
+    }
+
+    private void stopWatching() {
+        if (watchedIndex != null) {
+            watchedIndex.unwatch(getPos(), WATCH_RADIUS, watcher);
+            watchedIndex = null;
+        }
+        sleeping = false;
+    }
+
+    @Override
+    public void markDirty() {
+        super.markDirty();
+        wake();
+    }
+
+    @Override
+    public void invalidate() {
+        stopWatching();
+        super.invalidate();
+    }
+
+    @Override
+    public void onChunkUnload() {
+        stopWatching();
+        super.onChunkUnload();
     }
 
     @Override
@@ -134,7 +202,7 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
     @Override
     public void update() {
         super.update();
-        if (Game.isClient(getWorld()))
+        if (Game.isClient(getWorld()) || sleeping)
             return;
         // Legacy stuff?
 //        if (!tested) {
@@ -162,6 +230,8 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
                 if (state != null)
                     WorldPlugin.notifyBlocksOfNeighborChangeOnSide(worldObj, getPos(), getBlockType(), getBlockState().getValue(BlockDetector.FRONT));
             }
+            if (powerDelay == 0)
+                trySleep();
         }
     }
 
@@ -178,6 +248,7 @@ public class TileDetector extends RailcraftTickingTileEntity implements IGuiRetu
     @Override
     public void readGuiData(RailcraftInputStream data, EntityPlayer sender) throws IOException {
         detector.readGuiData(data, sender);
+        wake();
     }
 
     @Override
@@ -34,6 +34,13 @@ public class TileChargeFeederAdmin extends TileCharge {
     private static class InfiniteBattery extends IChargeBlock.ChargeBattery {
         private boolean enabled;
 
+        private void setEnabled(boolean enabled) {
+            if (this.enabled != enabled) {
+                this.enabled = enabled;
+                markChanged();
+            }
+        }
+
         @Override
         public double getMaxDraw() {
             return enabled ? Double.MAX_VALUE : 0.0;
@@ -79,12 +86,12 @@ public class TileChargeFeederAdmin extends TileCharge {
     @Override
     public void onBlockPlacedBy(IBlockState state, @Nullable EntityLivingBase placer, ItemStack stack) {
         super.onBlockPlacedBy(state, placer, stack);
-        getChargeBattery().enabled = state.getValue(BlockChargeFeeder.REDSTONE);
+        getChargeBattery().setEnabled(state.getValue(BlockChargeFeeder.REDSTONE));
     }
 
     @Override
     public void neighborChanged(IBlockState state, World worldIn, BlockPos pos, Block blockIn) {
-        getChargeBattery().enabled = state.getValue(BlockChargeFeeder.REDSTONE);
+        getChargeBattery().setEnabled(state.getValue(BlockChargeFeeder.REDSTONE));
     }
 
     @Override
@@ -97,6 +104,6 @@ public class TileChargeFeederAdmin extends TileCharge {
     @Override
     public void readFromNBT(NBTTagCompound nbt) {
         super.readFromNBT(nbt);
-        getChargeBattery().enabled = nbt.getBoolean("enabled");
+        getChargeBattery().setEnabled(nbt.getBoolean("enabled"));
     }
 }
@@ -22,6 +22,7 @@ import mods.railcraft.common.util.network.RailcraftInputStream;
 import mods.railcraft.common.util.network.RailcraftOutputStream;
 import mods.railcraft.common.util.routing.IRouter;
 import mods.railcraft.common.util.routing.ITileRouting;
+import mods.railcraft.common.util.routing.RoutePlanner;
 import mods.railcraft.common.util.routing.RoutingLogic;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
@@ -46,6 +47,7 @@ public class TileActuatorRouting extends TileActuatorSecured implements IRouter,
     private final StandaloneInventory inv = new StandaloneInventory(1, this);
     private final MultiButtonController<RoutingButtonState> routingController = MultiButtonController.create(0, RoutingButtonState.values());
     private RoutingLogic logic;
+    private boolean planned;
 
     @Override
     public MultiButtonController<RoutingButtonState> getRoutingController() {
@@ -106,6 +108,34 @@ public class TileActuatorRouting extends TileActuatorSecured implements IRouter,
         inv.setInventorySlotContents(0, stack);
     }
 
+    @Override
+    public void update() {
+        super.update();
+        if (!planned && Game.isHost(worldObj)) {
+            planned = true;
+            RoutePlanner.update(worldObj, getPos(), getLogic().orElse(null));
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        leavePlanner();
+        super.invalidate();
+    }
+
+    @Override
+    public void onChunkUnload() {
+        leavePlanner();
+        super.onChunkUnload();
+    }
+
+    private void leavePlanner() {
+        if (planned) {
+            planned = false;
+            RoutePlanner.remove(worldObj, getPos());
+        }
+    }
+
     @Override
     public void onBlockRemoval() {
         super.onBlockRemoval();
@@ -132,6 +162,8 @@ public class TileActuatorRouting extends TileActuatorSecured implements IRouter,
     public void markDirty() {
         super.markDirty();
         resetLogic();
+        if (planned)
+            RoutePlanner.update(worldObj, getPos(), getLogic().orElse(null));
         sendUpdateToClient();
     }
 
@@ -186,6 +218,11 @@ public class TileActuatorRouting extends TileActuatorSecured implements IRouter,
 
     @Override
     public boolean shouldSwitch(@Nullable EntityMinecart cart) {
-        return getLogic().map(l -> cart != null && l.isValid() && l.matches(this, cart)).orElse(false);
+        if (cart == null)
+            return false;
+        Optional<RoutingLogic> logic = getLogic();
+        if (logic.isPresent())
+            return logic.get().isValid() && logic.get().matches(this, cart);
+        return RoutePlanner.shouldSwitch(worldObj, getPos(), cart);
     }
 }
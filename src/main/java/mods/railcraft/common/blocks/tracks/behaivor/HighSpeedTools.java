@@ -18,7 +18,6 @@ import mods.railcraft.common.carts.CartTools;
 import mods.railcraft.common.core.RailcraftConfig;
 import net.minecraft.block.BlockRailBase;
 import net.minecraft.entity.item.EntityMinecart;
-import net.minecraft.util.EnumFacing;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.IBlockAccess;
 import net.minecraft.world.World;
@@ -32,7 +31,6 @@ import javax.annotation.Nullable;
  */
 public class HighSpeedTools {
     public static final float SPEED_CUTOFF = 0.39f;
-    public static final int LOOK_AHEAD_DIST = 2;
     public static final float SPEED_SLOPE = 0.45f;
 
     public static void checkSafetyAndExplode(World world, BlockPos pos, EntityMinecart cart) {
@@ -99,31 +97,14 @@ public class HighSpeedTools {
         return TrackTools.getTrackTypeAt(world, pos).isHighSpeed();
     }
 
-    public static float speedForNextTrack(World world, BlockPos pos, int dist, EntityMinecart cart) {
-        float maxSpeed = RailcraftConfig.getMaxHighSpeed();
-        if (dist < LOOK_AHEAD_DIST)
-            for (EnumFacing side : EnumFacing.HORIZONTALS) {
-                BlockPos nextPos = pos.offset(side);
-                boolean foundTrack = TrackTools.isRailBlockAt(world, nextPos);
-                if (!foundTrack) {
-                    if (TrackTools.isRailBlockAt(world, nextPos.up())) {
-                        foundTrack = true;
-                        nextPos = nextPos.up();
-                    } else if (TrackTools.isRailBlockAt(world, nextPos.down())) {
-                        foundTrack = true;
-                        nextPos = nextPos.down();
-                    }
-                }
-                if (foundTrack) {
-                    BlockRailBase.EnumRailDirection dir = TrackTools.getTrackDirection(world, nextPos, cart);
-                    if (dir.isAscending())
-                        return SPEED_SLOPE;
-                    maxSpeed = speedForNextTrack(world, nextPos, dist + 1, cart);
-                    if (maxSpeed == SPEED_SLOPE)
-                        return SPEED_SLOPE;
-                }
-            }
-
-        return maxSpeed;
+    /**
+     * Slows the cart down ahead of any slope within the configured look-ahead distance.
+     *
+     * @see TrackTopologyCache
+     */
+    public static float speedForNextTrack(World world, BlockPos pos) {
+        if (TrackTopologyCache.isSlopeAhead(world, pos, RailcraftConfig.getHighSpeedLookAhead()))
+            return SPEED_SLOPE;
+        return RailcraftConfig.getMaxHighSpeed();
     }
 }
@@ -0,0 +1,266 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.blocks.tracks.behaivor;
+
+import com.google.common.collect.MapMaker;
+import mods.railcraft.common.blocks.tracks.TrackTools;
+import mods.railcraft.common.util.collections.LongObjectMap;
+import mods.railcraft.common.util.misc.PackedBlockPos;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Remembers how the tracks in a world connect, for the high speed look-ahead.
+ *
+ * For each position it stores where the track is on each horizontal side,
+ * allowing for a step up or down, and whether the track at the position is a slope.
+ * Entries are filed by chunk and a whole chunk is forgotten when a block in it,
+ * or next to it, changes, or when it is loaded or unloaded.
+ *
+ * Slopes are resolved without a cart, the shape of sloped track doesn't depend on one.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class TrackTopologyCache implements IWorldEventListener {
+    private static final Map<World, TrackTopologyCache> caches = new MapMaker().weakKeys().makeMap();
+    private static final EventHandler eventHandler = new EventHandler();
+    private final World world;
+    private final boolean registered;
+    private final LongObjectMap<LongObjectMap<Node>> chunks = new LongObjectMap<>();
+    private final BlockPos.MutableBlockPos probe = new BlockPos.MutableBlockPos();
+    private long[] frontier = new long[16];
+    private long[] visited = new long[16];
+
+    private TrackTopologyCache(World world, boolean registered) {
+        this.world = world;
+        this.registered = registered;
+    }
+
+    public static Object getEventListener() {
+        return eventHandler;
+    }
+
+    /**
+     * @return true if a sloped track can be reached in no more than the given number of steps along the track
+     */
+    public static boolean isSlopeAhead(World world, BlockPos pos, int distance) {
+        TrackTopologyCache cache = caches.get(world);
+        if (cache == null)
+            cache = new TrackTopologyCache(world, false);
+        return cache.findSlope(pos.toLong(), distance);
+    }
+
+    private boolean findSlope(long start, int distance) {
+        int visitedCount = 0;
+        int frontierStart = 0;
+        int frontierEnd = 0;
+        visited = push(visited, visitedCount++, start);
+        frontier = push(frontier, frontierEnd++, start);
+        for (int step = 0; step < distance && frontierStart < frontierEnd; step++) {
+            int levelEnd = frontierEnd;
+            for (; frontierStart < levelEnd; frontierStart++) {
+                Node node = getNode(frontier[frontierStart]);
+                for (int side = 0; side < 4; side++) {
+                    if ((node.sides & (1 << side)) == 0)
+                        continue;
+                    long next = node.next[side];
+                    if (contains(visited, visitedCount, next))
+                        continue;
+                    if (getNode(next).ascending)
+                        return true;
+                    visited = push(visited, visitedCount++, next);
+                    frontier = push(frontier, frontierEnd++, next);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long[] push(long[] array, int index, long value) {
+        if (index >= array.length)
+            array = Arrays.copyOf(array, array.length * 2);
+        array[index] = value;
+        return array;
+    }
+
+    private static boolean contains(long[] array, int count, long value) {
+        for (int i = 0; i < count; i++) {
+            if (array[i] == value)
+                return true;
+        }
+        return false;
+    }
+
+    private Node getNode(long pos) {
+        int x = PackedBlockPos.getX(pos);
+        int z = PackedBlockPos.getZ(pos);
+        long chunkKey = ChunkPos.asLong(x >> 4, z >> 4);
+        LongObjectMap<Node> nodes = chunks.get(chunkKey);
+        if (nodes == null) {
+            nodes = new LongObjectMap<>();
+            // nothing would ever clear the nodes of a world that isn't listening for changes
+            if (registered)
+                chunks.put(chunkKey, nodes);
+        }
+        Node node = nodes.get(pos);
+        if (node == null) {
+            node = buildNode(pos);
+            nodes.put(pos, node);
+        }
+        return node;
+    }
+
+    private Node buildNode(long pos) {
+        Node node = new Node();
+        PackedBlockPos.unpack(pos, probe);
+        node.ascending = TrackTools.isRailBlockAt(world, probe) && TrackTools.getTrackDirection(world, probe).isAscending();
+        for (int side = 0; side < 4; side++) {
+            EnumFacing facing = EnumFacing.HORIZONTALS[side];
+            long next = PackedBlockPos.offset(pos, facing.getFrontOffsetX(), 0, facing.getFrontOffsetZ());
+            if (!isRailAt(next)) {
+                if (isRailAt(PackedBlockPos.offset(next, 0, 1, 0)))
+                    next = PackedBlockPos.offset(next, 0, 1, 0);
+                else if (isRailAt(PackedBlockPos.offset(next, 0, -1, 0)))
+                    next = PackedBlockPos.offset(next, 0, -1, 0);
+                else
+                    continue;
+            }
+            node.sides |= 1 << side;
+            node.next[side] = next;
+        }
+        return node;
+    }
+
+    private boolean isRailAt(long pos) {
+        return TrackTools.isRailBlockAt(world, PackedBlockPos.unpack(pos, probe));
+    }
+
+    /**
+     * Forgets the chunk holding the position, and the one next door if the position is on the edge.
+     */
+    private void invalidate(int x, int z) {
+        int cx = x >> 4;
+        int cz = z >> 4;
+        chunks.remove(ChunkPos.asLong(cx, cz));
+        if ((x & 15) == 0)
+            chunks.remove(ChunkPos.asLong(cx - 1, cz));
+        else if ((x & 15) == 15)
+            chunks.remove(ChunkPos.asLong(cx + 1, cz));
+        if ((z & 15) == 0)
+            chunks.remove(ChunkPos.asLong(cx, cz - 1));
+        else if ((z & 15) == 15)
+            chunks.remove(ChunkPos.asLong(cx, cz + 1));
+    }
+
+    private void invalidateChunk(int cx, int cz) {
+        chunks.remove(ChunkPos.asLong(cx, cz));
+        for (EnumFacing side : EnumFacing.HORIZONTALS) {
+            chunks.remove(ChunkPos.asLong(cx + side.getFrontOffsetX(), cz + side.getFrontOffsetZ()));
+        }
+    }
+
+    @Override
+    public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        invalidate(pos.getX(), pos.getZ());
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent sound, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent sound, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity) {
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+
+    private static final class Node {
+        private final long[] next = new long[4];
+        private byte sides;
+        private boolean ascending;
+    }
+
+    public static final class EventHandler {
+        private EventHandler() {
+        }
+
+        @SubscribeEvent
+        public void onWorldLoad(WorldEvent.Load event) {
+            World world = event.getWorld();
+            TrackTopologyCache cache = new TrackTopologyCache(world, true);
+            caches.put(world, cache);
+            world.addEventListener(cache);
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            caches.remove(event.getWorld());
+        }
+
+        @SubscribeEvent
+        public void onChunkLoad(ChunkEvent.Load event) {
+            TrackTopologyCache cache = caches.get(event.getWorld());
+            if (cache != null)
+                cache.invalidateChunk(event.getChunk().xPosition, event.getChunk().zPosition);
+        }
+
+        @SubscribeEvent
+        public void onChunkUnload(ChunkEvent.Unload event) {
+            TrackTopologyCache cache = caches.get(event.getWorld());
+            if (cache != null)
+                cache.invalidateChunk(event.getChunk().xPosition, event.getChunk().zPosition);
+        }
+    }
+}
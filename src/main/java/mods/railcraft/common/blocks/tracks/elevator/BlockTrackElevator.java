@@ -11,6 +11,7 @@ package mods.railcraft.common.blocks.tracks.elevator;
 
 import mods.railcraft.common.blocks.BlockRailcraft;
 import mods.railcraft.common.blocks.tracks.TrackTools;
+import mods.railcraft.common.carts.CartState;
 import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.items.ItemRail;
 import mods.railcraft.common.items.RailcraftItems;
@@ -249,7 +250,7 @@ public class BlockTrackElevator extends BlockRailcraft {
      *              assumed that the minecart is whithin the area of effect of the block
      */
     protected void minecartInteraction(World world, EntityMinecart cart, BlockPos pos) {
-        cart.getEntityData().setByte("elevator", ELEVATOR_TIMER);
+        CartState.get(cart).setElevator(ELEVATOR_TIMER);
         cart.setNoGravity(true);
         IBlockState state = WorldPlugin.getBlockState(world, pos);
         keepMinecartConnected(pos, state, cart);
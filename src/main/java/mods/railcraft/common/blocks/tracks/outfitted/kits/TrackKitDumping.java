@@ -11,6 +11,7 @@ package mods.railcraft.common.blocks.tracks.outfitted.kits;
 
 import mods.railcraft.api.tracks.ITrackKitPowered;
 import mods.railcraft.common.blocks.tracks.outfitted.TrackKits;
+import mods.railcraft.common.carts.CartState;
 import mods.railcraft.common.carts.CartTools;
 import net.minecraft.block.Block;
 import net.minecraft.block.state.IBlockState;
@@ -49,7 +50,7 @@ public class TrackKitDumping extends TrackKitSuspended implements ITrackKitPower
         if (cart.isBeingRidden()) {
             CartTools.removePassengers(cart, cart.getPositionVector().addVector(0, -2, 0));
         }
-        cart.getEntityData().setInteger("MountPrevention", TIME_TILL_NEXT_MOUNT);
+        CartState.get(cart).setMountPrevention(TIME_TILL_NEXT_MOUNT);
     }
 
     @Override
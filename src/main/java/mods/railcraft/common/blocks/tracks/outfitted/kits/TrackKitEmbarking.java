@@ -11,6 +11,7 @@ package mods.railcraft.common.blocks.tracks.outfitted.kits;
 
 import mods.railcraft.api.core.items.IToolCrowbar;
 import mods.railcraft.common.blocks.tracks.outfitted.TrackKits;
+import mods.railcraft.common.carts.CartState;
 import mods.railcraft.common.carts.CartTools;
 import mods.railcraft.common.gui.EnumGui;
 import mods.railcraft.common.gui.GuiHandler;
@@ -88,7 +89,7 @@ public class TrackKitEmbarking extends TrackKitPowered implements IGuiReturnHand
 
     @Override
     public void onMinecartPass(EntityMinecart cart) {
-        if (isPowered() && cart.canBeRidden() && !cart.isBeingRidden() && cart.getEntityData().getInteger("MountPrevention") <= 0) {
+        if (isPowered() && cart.canBeRidden() && !cart.isBeingRidden() && CartState.get(cart).getMountPrevention() <= 0) {
             int a = area;
             AxisAlignedBB box = AABBFactory.start().createBoxForTileAt(getPos()).build();
             box = box.expand(a, a, a);
@@ -9,7 +9,6 @@
  -----------------------------------------------------------------------------*/
 package mods.railcraft.common.blocks.tracks.outfitted.kits;
 
-import mods.railcraft.api.carts.CartToolsAPI;
 import mods.railcraft.api.core.items.IToolCrowbar;
 import mods.railcraft.api.events.CartLockdownEvent;
 import mods.railcraft.api.tracks.ITrackKitLockdown;
@@ -245,7 +244,7 @@ public class TrackKitLocking extends TrackKitRailcraft implements ITrackKitLockd
                 else
                     trainDelay = 0; // We've encountered a new train, force the delay to 0 so we return false
             } else if (trainLeaving) {
-                List<EntityMinecart> carts = CartToolsAPI.getMinecartsAt(theWorldAsserted(), getPos(), 0.0f);
+                List<EntityMinecart> carts = CartTools.getMinecartsAt(theWorldAsserted(), getPos(), 0.0f);
                 for (EntityMinecart cart : carts) {
                     if (Train.areInSameTrain(cart, prevCart)) {
                         trainDelay = TrackTools.TRAIN_LOCKDOWN_DELAY;
@@ -9,7 +9,6 @@
  -----------------------------------------------------------------------------*/
 package mods.railcraft.common.blocks.tracks.outfitted.kits;
 
-import mods.railcraft.api.carts.CartToolsAPI;
 import mods.railcraft.api.tracks.ISwitchActuator;
 import mods.railcraft.api.tracks.ISwitchActuator.ArrowDirection;
 import mods.railcraft.api.tracks.ITrackKitSwitch;
@@ -310,7 +309,7 @@ public abstract class TrackKitSwitch extends TrackKitRailcraft implements ITrack
         // We only set sprung/locked when a cart enters our track, this is
         // mainly for visual purposes as the subclass's getRailDirectionRaw()
         // determines which direction the carts actually take.
-        List<EntityMinecart> cartsOnTrack = CartToolsAPI.getMinecartsAt(theWorldAsserted(), getTile().getPos(), 0.3f);
+        List<EntityMinecart> cartsOnTrack = CartTools.getMinecartsAt(theWorldAsserted(), getTile().getPos(), 0.3f);
         Set<UUID> uuidOnTrack = cartsOnTrack.stream().map(Entity::getUniqueID).collect(Collectors.toSet());
 
         EntityMinecart bestCart = getBestCartForVisualState(cartsOnTrack);
@@ -385,6 +384,15 @@ public abstract class TrackKitSwitch extends TrackKitRailcraft implements ITrack
 
     public abstract EnumFacing getActuatorLocation();
 
+    /**
+     * The shape of the track for a cart that is, or isn't, switched, regardless of any cart on it.
+     */
+    public EnumRailDirection getRouteDirection(boolean switched) {
+        return getRouteDirection(getRailDirectionRaw(), switched);
+    }
+
+    protected abstract EnumRailDirection getRouteDirection(EnumRailDirection current, boolean switched);
+
     public abstract ArrowDirection getRedSignDirection();
 
     public abstract ArrowDirection getWhiteSignDirection();
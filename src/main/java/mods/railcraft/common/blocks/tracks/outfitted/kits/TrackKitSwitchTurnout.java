@@ -51,7 +51,12 @@ public class TrackKitSwitchTurnout extends TrackKitSwitch implements ITrackKitRe
     @Override
     public EnumRailDirection getRailDirection(IBlockState state, @Nullable EntityMinecart cart) {
         EnumRailDirection current = super.getRailDirection(state, cart);
-        if (cart != null && shouldSwitchForCart(cart)) {
+        return getRouteDirection(current, cart != null && shouldSwitchForCart(cart));
+    }
+
+    @Override
+    protected EnumRailDirection getRouteDirection(EnumRailDirection current, boolean switched) {
+        if (switched) {
             if (current == EnumRailDirection.NORTH_SOUTH) {
                 if (isMirrored()) {
                     return reversed ? EnumRailDirection.SOUTH_WEST : EnumRailDirection.NORTH_WEST;
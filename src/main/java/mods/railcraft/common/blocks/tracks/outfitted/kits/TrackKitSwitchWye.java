@@ -45,40 +45,25 @@ public class TrackKitSwitchWye extends TrackKitSwitch {
     @Override
     public BlockRailBase.EnumRailDirection getRailDirection(IBlockState state, EntityMinecart cart) {
         BlockRailBase.EnumRailDirection dir = super.getRailDirection(state, cart);
-        if (cart != null) {
-            if (dir == NORTH_SOUTH) {
-                if (isMirrored()) {
-                    if (shouldSwitchForCart(cart)) {
-                        dir = NORTH_WEST;
-                    } else {
-                        dir = SOUTH_WEST;
-                    }
-                } else {
-                    if (shouldSwitchForCart(cart)) {
-                        dir = SOUTH_EAST;
-                    } else {
-                        dir = NORTH_EAST;
-                    }
-                }
-            } else if (dir == EAST_WEST) {
-                if (isMirrored()) {
-                    if (shouldSwitchForCart(cart)) {
-                        dir = NORTH_EAST;
-                    } else {
-                        dir = NORTH_WEST;
-                    }
-                } else {
-                    if (shouldSwitchForCart(cart)) {
-                        dir = SOUTH_WEST;
-                    } else {
-                        dir = SOUTH_EAST;
-                    }
-                }
-            }
-        }
+        if (cart != null)
+            dir = getRouteDirection(dir, shouldSwitchForCart(cart));
         return dir;
     }
 
+    @Override
+    protected EnumRailDirection getRouteDirection(EnumRailDirection current, boolean switched) {
+        if (current == NORTH_SOUTH) {
+            if (isMirrored())
+                return switched ? NORTH_WEST : SOUTH_WEST;
+            return switched ? SOUTH_EAST : NORTH_EAST;
+        } else if (current == EAST_WEST) {
+            if (isMirrored())
+                return switched ? NORTH_EAST : NORTH_WEST;
+            return switched ? SOUTH_WEST : SOUTH_EAST;
+        }
+        return current;
+    }
+
     @Override
     protected List<UUID> getCartsAtLockEntrance() {
         EnumRailDirection dir = getRailDirectionRaw();
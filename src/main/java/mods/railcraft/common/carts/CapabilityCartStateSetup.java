@@ -0,0 +1,92 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.carts;
+
+import mods.railcraft.common.core.RailcraftConstants;
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.nbt.NBTBase;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityManager;
+import net.minecraftforge.common.capabilities.ICapabilitySerializable;
+import net.minecraftforge.event.AttachCapabilitiesEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+
+/**
+ * Registers {@link CartState} and attaches it to every minecart.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public class CapabilityCartStateSetup {
+    private static final ResourceLocation KEY = new ResourceLocation(RailcraftConstants.RESOURCE_DOMAIN, "cart_state");
+
+    public static void register() {
+        CapabilityManager.INSTANCE.register(CartState.class, new Capability.IStorage<CartState>() {
+            @Override
+            public NBTBase writeNBT(Capability<CartState> capability, CartState instance, EnumFacing side) {
+                NBTTagCompound nbt = new NBTTagCompound();
+                instance.writeTo(nbt);
+                return nbt;
+            }
+
+            @Override
+            public void readNBT(Capability<CartState> capability, CartState instance, EnumFacing side, NBTBase nbt) {
+                instance.readFrom((NBTTagCompound) nbt);
+            }
+        }, CartState::new);
+        MinecraftForge.EVENT_BUS.register(new CapabilityCartStateSetup());
+    }
+
+    @SubscribeEvent
+    public void attach(AttachCapabilitiesEvent.Entity event) {
+        if (event.getEntity() instanceof EntityMinecart)
+            event.addCapability(KEY, new Provider((EntityMinecart) event.getEntity()));
+    }
+
+    /**
+     * Saves the state back into the cart's entity data, under the keys it has always used,
+     * rather than into the capability tag.
+     */
+    private static class Provider implements ICapabilitySerializable<NBTTagCompound> {
+        private final EntityMinecart cart;
+        private final CartState state = new CartState();
+
+        private Provider(EntityMinecart cart) {
+            this.cart = cart;
+        }
+
+        @Override
+        public boolean hasCapability(Capability<?> capability, EnumFacing facing) {
+            return capability == CartState.CART_STATE;
+        }
+
+        @Override
+        public <T> T getCapability(Capability<T> capability, EnumFacing facing) {
+            if (capability == CartState.CART_STATE)
+                return CartState.CART_STATE.cast(state);
+            return null;
+        }
+
+        @Override
+        public NBTTagCompound serializeNBT() {
+            // the entity data tag is written out along with the rest of the entity
+            state.writeTo(cart.getEntityData());
+            return new NBTTagCompound();
+        }
+
+        @Override
+        public void deserializeNBT(NBTTagCompound nbt) {
+            state.reset();
+        }
+    }
+}
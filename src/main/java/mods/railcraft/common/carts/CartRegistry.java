@@ -0,0 +1,204 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.carts;
+
+import com.google.common.collect.MapMaker;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+import net.minecraftforge.event.entity.minecart.MinecartUpdateEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.EventPriority;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps track of the minecarts loaded in each world by UUID, on both sides.
+ *
+ * Carts are added and removed by a world listener as they enter and leave the world,
+ * so lookups don't have to scan the entity list. The listener also lets {@link Train}
+ * know when its membership needs checking.
+ *
+ * Server worlds also get a {@link CartSpatialIndex}, which is updated after each cart moves
+ * and swept once a tick for carts moved by other means.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class CartRegistry {
+    private static final Map<World, Map<UUID, EntityMinecart>> registries = new MapMaker().weakKeys().makeMap();
+    private static final Map<World, CartSpatialIndex> indexes = new MapMaker().weakKeys().makeMap();
+    private static final CartRegistry instance = new CartRegistry();
+
+    private CartRegistry() {
+    }
+
+    public static CartRegistry getEventListener() {
+        return instance;
+    }
+
+    /**
+     * @return the cart, or null if it isn't loaded or is dead
+     */
+    @Nullable
+    public static EntityMinecart getCart(World world, UUID id) {
+        Map<UUID, EntityMinecart> carts = registries.get(world);
+        if (carts == null)
+            return findCart(world, id);
+        EntityMinecart cart = carts.get(id);
+        if (cart != null && cart.isEntityAlive())
+            return cart;
+        return null;
+    }
+
+    /**
+     * @return the cart index for the world, or null on the client or if the world never fired a load event
+     */
+    @Nullable
+    public static CartSpatialIndex getIndex(World world) {
+        return indexes.get(world);
+    }
+
+    /**
+     * Fallback for worlds that never fired a load event, like some fake worlds.
+     */
+    @Nullable
+    private static EntityMinecart findCart(World world, UUID id) {
+        for (Entity entity : world.loadedEntityList) {
+            if (entity instanceof EntityMinecart && entity.isEntityAlive() && entity.getPersistentID().equals(id))
+                return (EntityMinecart) entity;
+        }
+        return null;
+    }
+
+    @SubscribeEvent
+    public void onWorldLoad(WorldEvent.Load event) {
+        World world = event.getWorld();
+        Map<UUID, EntityMinecart> carts = new HashMap<>();
+        for (Entity entity : world.loadedEntityList) {
+            if (entity instanceof EntityMinecart)
+                carts.put(entity.getPersistentID(), (EntityMinecart) entity);
+        }
+        registries.put(world, carts);
+        CartSpatialIndex index = null;
+        if (!world.isRemote) {
+            index = new CartSpatialIndex();
+            for (EntityMinecart cart : carts.values()) {
+                index.add(cart);
+            }
+            indexes.put(world, index);
+        }
+        world.addEventListener(new Listener(carts, index));
+    }
+
+    @SubscribeEvent
+    public void onWorldUnload(WorldEvent.Unload event) {
+        registries.remove(event.getWorld());
+        indexes.remove(event.getWorld());
+    }
+
+    /**
+     * Runs after the other handlers, which may still move the cart.
+     */
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public void onMinecartUpdate(MinecartUpdateEvent event) {
+        EntityMinecart cart = event.getMinecart();
+        CartSpatialIndex index = indexes.get(cart.worldObj);
+        if (index != null)
+            index.update(cart);
+    }
+
+    @SubscribeEvent
+    public void tick(TickEvent.WorldTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            CartSpatialIndex index = indexes.get(event.world);
+            if (index != null)
+                index.updateAll();
+        }
+    }
+
+    private static class Listener implements IWorldEventListener {
+        private final Map<UUID, EntityMinecart> carts;
+        @Nullable
+        private final CartSpatialIndex index;
+
+        private Listener(Map<UUID, EntityMinecart> carts, @Nullable CartSpatialIndex index) {
+            this.carts = carts;
+            this.index = index;
+        }
+
+        @Override
+        public void onEntityAdded(Entity entity) {
+            if (entity instanceof EntityMinecart) {
+                carts.put(entity.getPersistentID(), (EntityMinecart) entity);
+                if (index != null)
+                    index.add((EntityMinecart) entity);
+                Train.onCartAdded((EntityMinecart) entity);
+            }
+        }
+
+        @Override
+        public void onEntityRemoved(Entity entity) {
+            // a replacement cart with the same id may already have been added
+            if (entity instanceof EntityMinecart) {
+                carts.remove(entity.getPersistentID(), entity);
+                if (index != null)
+                    index.remove((EntityMinecart) entity);
+                Train.onCartRemoved((EntityMinecart) entity);
+            }
+        }
+
+        @Override
+        public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        }
+
+        @Override
+        public void notifyLightSet(BlockPos pos) {
+        }
+
+        @Override
+        public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+        }
+
+        @Override
+        public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent sound, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+        }
+
+        @Override
+        public void playRecord(SoundEvent sound, BlockPos pos) {
+        }
+
+        @Override
+        public void spawnParticle(int particleID, boolean ignoreRange, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+        }
+
+        @Override
+        public void broadcastSound(int soundID, BlockPos pos, int data) {
+        }
+
+        @Override
+        public void playEvent(EntityPlayer player, int type, BlockPos pos, int data) {
+        }
+
+        @Override
+        public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.carts;
+
+import mods.railcraft.common.util.collections.LongObjectMap;
+import mods.railcraft.common.util.misc.PackedBlockPos;
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.MathHelper;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Buckets the carts of a server world by the block they are in.
+ *
+ * Each cart is filed under the block containing its position, and moved to a
+ * new bucket when it crosses into another block. The buckets are intrusive linked
+ * lists, so keeping them current and querying them doesn't allocate.
+ *
+ * A normal cart's bounding box never reaches more than one block past its own,
+ * so a query only has to look one block beyond the area it covers. The few carts
+ * bigger than a block, like the Tunnel Bore, are kept on a separate list that
+ * every query checks.
+ *
+ * Things that only care about carts near them, like detectors, can watch an area
+ * and be told whenever a cart moves into or out of a block there, so they don't have to poll.
+ * Watchers are filed by zones of {@link #ZONE_SIZE} blocks to keep that cheap.
+ *
+ * Queries skip the zones without carts, so a big query box costs about as much as the
+ * zones it covers, and once those outnumber the carts it just checks every cart.
+ *
+ * Not thread safe, it's only used from the server thread.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ * @see CartRegistry
+ */
+public final class CartSpatialIndex {
+    public static final int ZONE_SIZE = 4;
+    private static final int ZONE_SHIFT = 2;
+    private final LongObjectMap<Entry> cells = new LongObjectMap<>(256);
+    private final LongObjectMap<List<IWatcher>> watchers = new LongObjectMap<>();
+    private final LongObjectMap<int[]> zoneCounts = new LongObjectMap<>();
+    private final Map<EntityMinecart, Entry> entries = new IdentityHashMap<>();
+    private final Entry oversized = new Entry(null);
+
+    CartSpatialIndex() {
+        oversized.prev = oversized;
+        oversized.next = oversized;
+    }
+
+    void add(EntityMinecart cart) {
+        if (entries.containsKey(cart))
+            return;
+        Entry entry = new Entry(cart);
+        entries.put(cart, entry);
+        file(entry);
+    }
+
+    void remove(EntityMinecart cart) {
+        Entry entry = entries.remove(cart);
+        if (entry != null)
+            unlink(entry);
+    }
+
+    /**
+     * Moves the cart to the right bucket if it has changed blocks.
+     */
+    void update(EntityMinecart cart) {
+        Entry entry = entries.get(cart);
+        if (entry != null && (entry.cell != cellOf(cart) || entry.large != isOversized(cart))) {
+            unlink(entry);
+            file(entry);
+        }
+    }
+
+    /**
+     * Catches carts that were moved by something other than their own update, like a teleport.
+     */
+    void updateAll() {
+        for (EntityMinecart cart : entries.keySet()) {
+            update(cart);
+        }
+    }
+
+    /**
+     * Starts telling the watcher about carts entering or leaving any block within the radius of the position.
+     */
+    public void watch(BlockPos pos, int radius, IWatcher watcher) {
+        int x2 = (pos.getX() + radius) >> ZONE_SHIFT;
+        int y2 = (pos.getY() + radius) >> ZONE_SHIFT;
+        int z2 = (pos.getZ() + radius) >> ZONE_SHIFT;
+        for (int x = (pos.getX() - radius) >> ZONE_SHIFT; x <= x2; x++) {
+            for (int y = (pos.getY() - radius) >> ZONE_SHIFT; y <= y2; y++) {
+                for (int z = (pos.getZ() - radius) >> ZONE_SHIFT; z <= z2; z++) {
+                    long zone = PackedBlockPos.pack(x, y, z);
+                    List<IWatcher> list = watchers.get(zone);
+                    if (list == null) {
+                        list = new ArrayList<>(2);
+                        watchers.put(zone, list);
+                    }
+                    if (!list.contains(watcher))
+                        list.add(watcher);
+                }
+            }
+        }
+    }
+
+    /**
+     * Undoes {@link #watch(BlockPos, int, IWatcher)}, the position and radius must be the same.
+     */
+    public void unwatch(BlockPos pos, int radius, IWatcher watcher) {
+        int x2 = (pos.getX() + radius) >> ZONE_SHIFT;
+        int y2 = (pos.getY() + radius) >> ZONE_SHIFT;
+        int z2 = (pos.getZ() + radius) >> ZONE_SHIFT;
+        for (int x = (pos.getX() - radius) >> ZONE_SHIFT; x <= x2; x++) {
+            for (int y = (pos.getY() - radius) >> ZONE_SHIFT; y <= y2; y++) {
+                for (int z = (pos.getZ() - radius) >> ZONE_SHIFT; z <= z2; z++) {
+                    long zone = PackedBlockPos.pack(x, y, z);
+                    List<IWatcher> list = watchers.get(zone);
+                    if (list != null && list.remove(watcher) && list.isEmpty())
+                        watchers.remove(zone);
+                }
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Finds the living carts whose bounding box intersects the given box.
+     *
+     * @param out    where to put the carts, may be null if only the count is wanted
+     * @param filter an extra test the carts must pass, may be null
+     * @return the number of carts found
+     */
+    public int collect(AxisAlignedBB box, @Nullable List<? super EntityMinecart> out, @Nullable Predicate<? super EntityMinecart> filter) {
+        return collect(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, out, filter);
+    }
+
+    /**
+     * Same as {@link #collect(AxisAlignedBB, List, Predicate)}, without having to build a box.
+     */
+    public int collect(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                       @Nullable List<? super EntityMinecart> out, @Nullable Predicate<? super EntityMinecart> filter) {
+        return query(minX, minY, minZ, maxX, maxY, maxZ, out, filter, false);
+    }
+
+    /**
+     * @return true if any living cart's bounding box intersects the given box
+     */
+    public boolean any(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        return query(minX, minY, minZ, maxX, maxY, maxZ, null, null, true) > 0;
+    }
+
+    private int query(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                      @Nullable List<? super EntityMinecart> out, @Nullable Predicate<? super EntityMinecart> filter, boolean first) {
+        int x1 = MathHelper.floor_double(minX) - 1;
+        int y1 = MathHelper.floor_double(minY) - 1;
+        int z1 = MathHelper.floor_double(minZ) - 1;
+        int x2 = MathHelper.floor_double(maxX) + 1;
+        int y2 = MathHelper.floor_double(maxY) + 1;
+        int z2 = MathHelper.floor_double(maxZ) + 1;
+        int zx1 = x1 >> ZONE_SHIFT;
+        int zy1 = y1 >> ZONE_SHIFT;
+        int zz1 = z1 >> ZONE_SHIFT;
+        int zx2 = x2 >> ZONE_SHIFT;
+        int zy2 = y2 >> ZONE_SHIFT;
+        int zz2 = z2 >> ZONE_SHIFT;
+        // a big box has more zones than there are carts, checking every cart is cheaper then
+        if ((long) (zx2 - zx1 + 1) * (zy2 - zy1 + 1) * (zz2 - zz1 + 1) > entries.size())
+            return scanAll(minX, minY, minZ, maxX, maxY, maxZ, out, filter, first);
+        int found = 0;
+        for (int zx = zx1; zx <= zx2; zx++) {
+            for (int zy = zy1; zy <= zy2; zy++) {
+                for (int zz = zz1; zz <= zz2; zz++) {
+                    if (zoneCounts.get(PackedBlockPos.pack(zx, zy, zz)) == null)
+                        continue;
+                    // only the blocks of the zone that are inside the box
+                    int cx2 = Math.min(x2, (zx << ZONE_SHIFT) + ZONE_SIZE - 1);
+                    int cy2 = Math.min(y2, (zy << ZONE_SHIFT) + ZONE_SIZE - 1);
+                    int cz2 = Math.min(z2, (zz << ZONE_SHIFT) + ZONE_SIZE - 1);
+                    for (int x = Math.max(x1, zx << ZONE_SHIFT); x <= cx2; x++) {
+                        for (int y = Math.max(y1, zy << ZONE_SHIFT); y <= cy2; y++) {
+                            for (int z = Math.max(z1, zz << ZONE_SHIFT); z <= cz2; z++) {
+                                for (Entry entry = cells.get(PackedBlockPos.pack(x, y, z)); entry != null; entry = entry.next) {
+                                    if (matches(entry.cart, minX, minY, minZ, maxX, maxY, maxZ, filter)) {
+                                        found++;
+                                        if (first)
+                                            return found;
+                                        if (out != null)
+                                            out.add(entry.cart);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (Entry entry = oversized.next; entry != oversized; entry = entry.next) {
+            if (matches(entry.cart, minX, minY, minZ, maxX, maxY, maxZ, filter)) {
+                found++;
+                if (first)
+                    return found;
+                if (out != null)
+                    out.add(entry.cart);
+            }
+        }
+        return found;
+    }
+
+    private int scanAll(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                        @Nullable List<? super EntityMinecart> out, @Nullable Predicate<? super EntityMinecart> filter, boolean first) {
+        int found = 0;
+        for (EntityMinecart cart : entries.keySet()) {
+            if (matches(cart, minX, minY, minZ, maxX, maxY, maxZ, filter)) {
+                found++;
+                if (first)
+                    return found;
+                if (out != null)
+                    out.add(cart);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return true if any cart is in a block within the radius of the position,
+     * or if one of the oversized carts reaches into that area
+     */
+    public boolean anyNear(BlockPos pos, int radius) {
+        for (int x = pos.getX() - radius; x <= pos.getX() + radius; x++) {
+            for (int y = pos.getY() - radius; y <= pos.getY() + radius; y++) {
+                for (int z = pos.getZ() - radius; z <= pos.getZ() + radius; z++) {
+                    if (cells.get(PackedBlockPos.pack(x, y, z)) != null)
+                        return true;
+                }
+            }
+        }
+        for (Entry entry = oversized.next; entry != oversized; entry = entry.next) {
+            if (matches(entry.cart, pos.getX() - radius, pos.getY() - radius, pos.getZ() - radius,
+                    pos.getX() + radius + 1, pos.getY() + radius + 1, pos.getZ() + radius + 1, null))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean matches(EntityMinecart cart, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                                   @Nullable Predicate<? super EntityMinecart> filter) {
+        if (cart.isDead)
+            return false;
+        // same test as AxisAlignedBB.intersectsWith, without needing a box for the query
+        AxisAlignedBB box = cart.getEntityBoundingBox();
+        if (box.maxX <= minX || box.minX >= maxX || box.maxY <= minY || box.minY >= maxY || box.maxZ <= minZ || box.minZ >= maxZ)
+            return false;
+        return filter == null || filter.test(cart);
+    }
+
+    private static long cellOf(EntityMinecart cart) {
+        return PackedBlockPos.pack(MathHelper.floor_double(cart.posX), MathHelper.floor_double(cart.posY), MathHelper.floor_double(cart.posZ));
+    }
+
+    private static boolean isOversized(EntityMinecart cart) {
+        return cart.width > 1.0F || cart.height > 1.0F;
+    }
+
+    private void file(Entry entry) {
+        entry.cell = cellOf(entry.cart);
+        entry.large = isOversized(entry.cart);
+        notifyWatchers(entry);
+        if (entry.large) {
+            entry.prev = oversized;
+            entry.next = oversized.next;
+            oversized.next.prev = entry;
+            oversized.next = entry;
+        } else {
+            long zone = zoneOf(entry.cell);
+            int[] count = zoneCounts.get(zone);
+            if (count == null) {
+                count = new int[1];
+                zoneCounts.put(zone, count);
+            }
+            count[0]++;
+            Entry head = cells.put(entry.cell, entry);
+            entry.prev = null;
+            entry.next = head;
+            if (head != null)
+                head.prev = entry;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        notifyWatchers(entry);
+        if (entry.large) {
+            entry.prev.next = entry.next;
+            entry.next.prev = entry.prev;
+        } else {
+            long zone = zoneOf(entry.cell);
+            int[] count = zoneCounts.get(zone);
+            if (count != null && --count[0] <= 0)
+                zoneCounts.remove(zone);
+            if (entry.next != null)
+                entry.next.prev = entry.prev;
+            if (entry.prev != null)
+                entry.prev.next = entry.next;
+            else if (entry.next != null)
+                cells.put(entry.cell, entry.next);
+            else
+                cells.remove(entry.cell);
+        }
+        entry.prev = null;
+        entry.next = null;
+    }
+
+    private void notifyWatchers(Entry entry) {
+        if (watchers.isEmpty())
+            return;
+        if (!entry.large) {
+            notifyZone(zoneOf(entry.cell));
+            return;
+        }
+        // big carts reach into more than one zone
+        AxisAlignedBB box = entry.cart.getEntityBoundingBox();
+        int x2 = MathHelper.floor_double(box.maxX) + 1 >> ZONE_SHIFT;
+        int y2 = MathHelper.floor_double(box.maxY) + 1 >> ZONE_SHIFT;
+        int z2 = MathHelper.floor_double(box.maxZ) + 1 >> ZONE_SHIFT;
+        for (int x = MathHelper.floor_double(box.minX) - 1 >> ZONE_SHIFT; x <= x2; x++) {
+            for (int y = MathHelper.floor_double(box.minY) - 1 >> ZONE_SHIFT; y <= y2; y++) {
+                for (int z = MathHelper.floor_double(box.minZ) - 1 >> ZONE_SHIFT; z <= z2; z++) {
+                    notifyZone(PackedBlockPos.pack(x, y, z));
+                }
+            }
+        }
+    }
+
+    private void notifyZone(long zone) {
+        List<IWatcher> list = watchers.get(zone);
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                list.get(i).onCartMoved();
+            }
+        }
+    }
+
+    private static long zoneOf(long cell) {
+        return PackedBlockPos.pack(PackedBlockPos.getX(cell) >> ZONE_SHIFT, PackedBlockPos.getY(cell) >> ZONE_SHIFT, PackedBlockPos.getZ(cell) >> ZONE_SHIFT);
+    }
+
+    /**
+     * Told when a cart enters or leaves a block in the watched area.
+     * Called in the middle of cart updates, so it should do little more than set a flag.
+     */
+    public interface IWatcher {
+        void onCartMoved();
+    }
+
+    private static final class Entry {
+        private final EntityMinecart cart;
+        private long cell;
+        private boolean large;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(EntityMinecart cart) {
+            this.cart = cart;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.carts;
+
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraftforge.common.capabilities.Capability;
+import net.minecraftforge.common.capabilities.CapabilityInject;
+
+/**
+ * The per-cart flags and timers used by the cart hooks, kept in plain fields
+ * instead of being looked up in the cart's entity data every tick.
+ *
+ * The values are still stored under the old keys in {@link EntityMinecart#getEntityData()},
+ * they are read the first time the state is used and written back when the cart is saved.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ * @see CapabilityCartStateSetup
+ */
+public final class CartState {
+    @CapabilityInject(CartState.class)
+    public static Capability<CartState> CART_STATE;
+    private static final String LAUNCHED = "Launched";
+    private static final String MOUNT_PREVENTION = "MountPrevention";
+    private static final String ELEVATOR = "elevator";
+    private static final String DERAIL = "derail";
+    private static final String EXPLODE = "explode";
+    private static final String GHOST = "ghost";
+    private boolean loaded;
+    private int launched;
+    private int mountPrevention;
+    private byte elevator;
+    private byte derail;
+    private boolean explode;
+    private boolean ghost;
+    private boolean highSpeed;
+    private short linkATimer;
+    private short linkBTimer;
+
+    public static CartState get(EntityMinecart cart) {
+        CartState state = cart.getCapability(CART_STATE, null);
+        if (state == null)
+            throw new IllegalStateException("Cart is missing its state capability: " + cart);
+        if (!state.loaded)
+            state.readFrom(cart.getEntityData());
+        return state;
+    }
+
+    void readFrom(NBTTagCompound data) {
+        launched = data.getInteger(LAUNCHED);
+        mountPrevention = data.getInteger(MOUNT_PREVENTION);
+        elevator = data.getByte(ELEVATOR);
+        derail = data.getByte(DERAIL);
+        explode = data.getBoolean(EXPLODE);
+        ghost = data.getBoolean(GHOST);
+        highSpeed = data.getBoolean(CartTools.HIGH_SPEED_TAG);
+        linkATimer = data.getShort(LinkageHandler.LINK_A_TIMER);
+        linkBTimer = data.getShort(LinkageHandler.LINK_B_TIMER);
+        loaded = true;
+    }
+
+    void writeTo(NBTTagCompound data) {
+        // nothing to write if the state was never touched, the entity data is still current
+        if (!loaded)
+            return;
+        writeInt(data, LAUNCHED, launched);
+        writeInt(data, MOUNT_PREVENTION, mountPrevention);
+        writeByte(data, ELEVATOR, elevator);
+        writeByte(data, DERAIL, derail);
+        writeBoolean(data, EXPLODE, explode);
+        writeBoolean(data, GHOST, ghost);
+        writeBoolean(data, CartTools.HIGH_SPEED_TAG, highSpeed);
+        writeShort(data, LinkageHandler.LINK_A_TIMER, linkATimer);
+        writeShort(data, LinkageHandler.LINK_B_TIMER, linkBTimer);
+    }
+
+    /**
+     * Forces the state to be read again from the entity data the next time it's used.
+     */
+    void reset() {
+        loaded = false;
+    }
+
+    private static void writeInt(NBTTagCompound data, String key, int value) {
+        if (value != 0)
+            data.setInteger(key, value);
+        else
+            data.removeTag(key);
+    }
+
+    private static void writeShort(NBTTagCompound data, String key, short value) {
+        if (value != 0)
+            data.setShort(key, value);
+        else
+            data.removeTag(key);
+    }
+
+    private static void writeByte(NBTTagCompound data, String key, byte value) {
+        if (value != 0)
+            data.setByte(key, value);
+        else
+            data.removeTag(key);
+    }
+
+    private static void writeBoolean(NBTTagCompound data, String key, boolean value) {
+        if (value)
+            data.setBoolean(key, true);
+        else
+            data.removeTag(key);
+    }
+
+    /**
+     * 0 when on the rails, 1 when just launched and 2 while in the air.
+     */
+    public int getLaunched() {
+        return launched;
+    }
+
+    public void setLaunched(int launched) {
+        this.launched = launched;
+    }
+
+    public boolean isLaunched() {
+        return launched > 0;
+    }
+
+    public int getMountPrevention() {
+        return mountPrevention;
+    }
+
+    public void setMountPrevention(int mountPrevention) {
+        this.mountPrevention = mountPrevention;
+    }
+
+    public byte getElevator() {
+        return elevator;
+    }
+
+    public void setElevator(byte elevator) {
+        this.elevator = elevator;
+    }
+
+    public boolean isOnElevator() {
+        return elevator > 0;
+    }
+
+    public byte getDerail() {
+        return derail;
+    }
+
+    public void setDerail(byte derail) {
+        this.derail = derail;
+    }
+
+    public boolean isExplode() {
+        return explode;
+    }
+
+    public void setExplode(boolean explode) {
+        this.explode = explode;
+    }
+
+    public boolean isGhost() {
+        return ghost;
+    }
+
+    public void setGhost(boolean ghost) {
+        this.ghost = ghost;
+    }
+
+    public boolean isHighSpeed() {
+        return highSpeed;
+    }
+
+    public void setHighSpeed(boolean highSpeed) {
+        this.highSpeed = highSpeed;
+    }
+
+    public short getLinkTimer(LinkageManager.LinkType linkType) {
+        return linkType == LinkageManager.LinkType.LINK_B ? linkBTimer : linkATimer;
+    }
+
+    public void setLinkTimer(LinkageManager.LinkType linkType, short timer) {
+        if (linkType == LinkageManager.LinkType.LINK_B)
+            linkBTimer = timer;
+        else
+            linkATimer = timer;
+    }
+}
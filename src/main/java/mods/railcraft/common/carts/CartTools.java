@@ -133,11 +133,11 @@ public class CartTools {
     }
 
     public static void setTravellingHighSpeed(EntityMinecart cart, boolean flag) {
-        cart.getEntityData().setBoolean(HIGH_SPEED_TAG, flag);
+        CartState.get(cart).setHighSpeed(flag);
     }
 
     public static boolean isTravellingHighSpeed(EntityMinecart cart) {
-        return cart.getEntityData().getBoolean(HIGH_SPEED_TAG);
+        return CartState.get(cart).isHighSpeed();
     }
 
     public static boolean cartVelocityIsLessThan(EntityMinecart cart, float vel) {
@@ -145,15 +145,74 @@ public class CartTools {
     }
 
     public static List<EntityMinecart> getMinecartsIn(World world, AxisAlignedBB searchBox) {
+        CartSpatialIndex index = CartRegistry.getIndex(world);
+        if (index != null) {
+            List<EntityMinecart> carts = new ArrayList<>();
+            index.collect(searchBox, carts, null);
+            return carts;
+        }
         List<EntityMinecart> entities = world.getEntitiesWithinAABB(EntityMinecart.class, searchBox);
         return entities.stream().filter(cart -> !cart.isDead).collect(Collectors.toList());
     }
 
+    /**
+     * Same as {@link CartToolsAPI#getMinecartsAt(World, BlockPos, float)}, but uses the cart index when there is one.
+     */
+    public static List<EntityMinecart> getMinecartsAt(World world, BlockPos pos, float sensitivity) {
+        CartSpatialIndex index = CartRegistry.getIndex(world);
+        if (index == null)
+            return CartToolsAPI.getMinecartsAt(world, pos, sensitivity);
+        List<EntityMinecart> carts = new ArrayList<>();
+        collectAt(index, pos.getX(), pos.getY(), pos.getZ(), sensitivity, carts);
+        return carts;
+    }
+
+    /**
+     * Same as {@link CartToolsAPI#getMinecartsOnAllSides(World, BlockPos, float)}, but uses the cart index when there is one.
+     */
+    public static List<EntityMinecart> getMinecartsOnAllSides(World world, BlockPos pos, float sensitivity) {
+        CartSpatialIndex index = CartRegistry.getIndex(world);
+        if (index == null)
+            return CartToolsAPI.getMinecartsOnAllSides(world, pos, sensitivity);
+        List<EntityMinecart> carts = new ArrayList<>();
+        for (EnumFacing side : EnumFacing.VALUES) {
+            collectAt(index, pos.getX() + side.getFrontOffsetX(), pos.getY() + side.getFrontOffsetY(), pos.getZ() + side.getFrontOffsetZ(), sensitivity, carts);
+        }
+        return carts;
+    }
+
+    /**
+     * Checks for carts without building a list, or a box.
+     */
+    public static boolean isMinecartAt(World world, BlockPos pos, float sensitivity) {
+        CartSpatialIndex index = CartRegistry.getIndex(world);
+        if (index == null)
+            return CartToolsAPI.isMinecartAt(world, pos, sensitivity);
+        sensitivity = Math.min(sensitivity, 0.49f);
+        return index.any(pos.getX() + sensitivity, pos.getY() + sensitivity, pos.getZ() + sensitivity,
+                pos.getX() + 1 - sensitivity, pos.getY() + 1 - sensitivity, pos.getZ() + 1 - sensitivity);
+    }
+
+    private static void collectAt(CartSpatialIndex index, int x, int y, int z, float sensitivity, List<EntityMinecart> carts) {
+        sensitivity = Math.min(sensitivity, 0.49f);
+        index.collect(x + sensitivity, y + sensitivity, z + sensitivity, x + 1 - sensitivity, y + 1 - sensitivity, z + 1 - sensitivity, carts, null);
+    }
+
     public static List<UUID> getMinecartUUIDsAt(World world, BlockPos pos, float sensitivity) {
         return getMinecartUUIDsAt(world, pos.getX(), pos.getY(), pos.getZ(), sensitivity);
     }
 
     public static List<UUID> getMinecartUUIDsAt(World world, int i, int j, int k, float sensitivity) {
+        CartSpatialIndex index = CartRegistry.getIndex(world);
+        if (index != null) {
+            List<EntityMinecart> carts = new ArrayList<>();
+            collectAt(index, i, j, k, sensitivity, carts);
+            List<UUID> ids = new ArrayList<>(carts.size());
+            for (EntityMinecart cart : carts) {
+                ids.add(cart.getPersistentID());
+            }
+            return ids;
+        }
         sensitivity = Math.min(sensitivity, 0.49f);
         List<EntityMinecart> entities = world.getEntitiesWithinAABB(EntityMinecart.class, new AxisAlignedBB(i + sensitivity, j + sensitivity, k + sensitivity, i + 1 - sensitivity, j + 1 - sensitivity, k + 1 - sensitivity));
         return entities.stream().filter(cart -> !cart.isDead).map(Entity::getPersistentID).collect(Collectors.toList());
@@ -231,21 +290,13 @@ public class CartTools {
      *
      * @param id Cart's persistent UUID
      * @return EntityMinecart
+     * @see CartRegistry
      */
     @Nullable
-    public static EntityMinecart getCartFromUUID(World world, UUID id) {
-        if (world instanceof WorldServer) {
-            Entity entity = ((WorldServer) world).getEntityFromUuid(id);
-            if (entity instanceof EntityMinecart && entity.isEntityAlive()) {
-                return (EntityMinecart) entity;
-            }
-        } else {
-            for (Entity entity : world.loadedEntityList) {
-                if (entity instanceof EntityMinecart && entity.isEntityAlive() && entity.getPersistentID().equals(id))
-                    return (EntityMinecart) entity;
-            }
-        }
-        return null;
+    public static EntityMinecart getCartFromUUID(World world, @Nullable UUID id) {
+        if (id == null)
+            return null;
+        return CartRegistry.getCart(world, id);
     }
 
     public static boolean startBoost(EntityMinecart cart, BlockPos pos, BlockRailBase.EnumRailDirection dir, double startBoost) {
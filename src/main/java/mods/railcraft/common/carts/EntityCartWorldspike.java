@@ -96,6 +96,14 @@ public abstract class EntityCartWorldspike extends CartBaseContainer implements
         return dataManager.get(TICKET);
     }
 
+    @Override
+    public void notifyDataManagerChange(DataParameter<?> key) {
+        super.notifyDataManagerChange(key);
+        // the flag follows the ticket on the server and is synced to the client
+        if (TICKET.equals(key))
+            Train.onWorldspikeTicketChanged(this);
+    }
+
     @Override
     public void onUpdate() {
         super.onUpdate();
@@ -17,7 +17,6 @@ import mods.railcraft.api.carts.*;
 import mods.railcraft.api.carts.locomotive.LocomotiveRenderType;
 import mods.railcraft.common.carts.EntityLocomotive.LocoLockButtonState;
 import mods.railcraft.common.core.RailcraftConfig;
-import mods.railcraft.common.core.RailcraftConstants;
 import mods.railcraft.common.gui.buttons.ButtonTextureSet;
 import mods.railcraft.common.gui.buttons.IButtonTextureSet;
 import mods.railcraft.common.gui.buttons.IMultiButtonState;
@@ -56,7 +55,6 @@ import net.minecraft.util.IStringSerializable;
 import net.minecraft.util.SoundEvent;
 import net.minecraft.util.math.MathHelper;
 import net.minecraft.world.World;
-import net.minecraftforge.fml.common.ObfuscationReflectionHelper;
 import net.minecraftforge.fml.common.registry.IEntityAdditionalSpawnData;
 import org.apache.commons.lang3.StringUtils;
 
@@ -100,6 +98,7 @@ public abstract class EntityLocomotive extends CartBaseContainer implements IDir
     private int tempIdle;
     private float whistlePitch = getNewWhistlePitch();
     private boolean preReverse;
+    private boolean wasRunning;
 
     private EnumSet<LocoMode> allowedModes = EnumSet.allOf(LocoMode.class);
     private LocoSpeed maxReverseSpeed = LocoSpeed.NORMAL;
@@ -378,6 +377,12 @@ public abstract class EntityLocomotive extends CartBaseContainer implements IDir
         if (tempIdle > 0)
             tempIdle--;
 
+        boolean running = isRunning();
+        if (running != wasRunning) {
+            wasRunning = running;
+            Train.getTrain(this).markSpeedChanged();
+        }
+
         if (update % WHISTLE_INTERVAL == 0 && isRunning() && rand.nextInt(WHISTLE_CHANCE) == 0)
             whistle();
     }
@@ -573,9 +578,7 @@ public abstract class EntityLocomotive extends CartBaseContainer implements IDir
     public void writeEntityToNBT(NBTTagCompound data) {
         super.writeEntityToNBT(data);
 
-        Boolean isInReverse = ObfuscationReflectionHelper.getPrivateValue(EntityMinecart.class, this, RailcraftConstants.IS_REVERSED_VARIABLE_INDEX);
-
-        data.setBoolean("isInReverse", isInReverse);
+        data.setBoolean("isInReverse", MinecartAccess.isInReverse(this));
 
         data.setString("model", model);
 
@@ -600,7 +603,7 @@ public abstract class EntityLocomotive extends CartBaseContainer implements IDir
     public void readEntityFromNBT(NBTTagCompound data) {
         super.readEntityFromNBT(data);
 
-        ObfuscationReflectionHelper.setPrivateValue(EntityMinecart.class, this, data.getBoolean("isInReverse"), RailcraftConstants.IS_REVERSED_VARIABLE_INDEX);
+        MinecartAccess.setInReverse(this, data.getBoolean("isInReverse"));
 
         model = data.getString("model");
 
@@ -57,7 +57,7 @@ public class ItemTunnelBore extends ItemCart {
     public EnumActionResult onItemUse(ItemStack stack, EntityPlayer player, World world, BlockPos pos, EnumHand hand, EnumFacing facing, float hitX, float hitY, float hitZ) {
         IBlockState existingState = WorldPlugin.getBlockState(world, pos);
         if (TrackTools.isRailBlock(existingState)) {
-            if (Game.isHost(world) && !CartToolsAPI.isMinecartAt(world, pos, 0)) {
+            if (Game.isHost(world) && !CartTools.isMinecartAt(world, pos, 0)) {
                 BlockRailBase.EnumRailDirection trackShape = TrackTools.getTrackDirection(world, pos, existingState);
                 if (TrackShapeHelper.isLevelStraight(trackShape)) {
                     EnumFacing playerFacing = MiscTools.getHorizontalSideFacingPlayer(player).getOpposite();
@@ -9,9 +9,12 @@
  -----------------------------------------------------------------------------*/
 package mods.railcraft.common.carts;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import mods.railcraft.api.carts.ILinkableCart;
 import mods.railcraft.api.carts.ILinkageManager;
 import mods.railcraft.api.tracks.TrackToolsAPI;
+import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.modules.ModuleLocomotives;
 import mods.railcraft.common.modules.RailcraftModuleManager;
 import mods.railcraft.common.util.misc.Vec2D;
@@ -20,6 +23,9 @@ import net.minecraftforge.event.entity.EntityEvent;
 import net.minecraftforge.event.entity.minecart.MinecartUpdateEvent;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 
+import java.util.List;
+import java.util.Map;
+
 public class LinkageHandler {
     public static final String LINK_A_TIMER = "linkA_timer";
     public static final String LINK_B_TIMER = "linkB_timer";
@@ -33,6 +39,7 @@ public class LinkageHandler {
     private static final float FORCE_LIMITER = 6F;
     //    private static final int TICK_HISTORY = 200;
     private static LinkageHandler instance;
+    private final Map<Train, Long> solvedTrains = new MapMaker().weakKeys().makeMap();
 //    private static Map<EntityMinecart, CircularVec3Queue> history = new MapMaker().weakKeys().makeMap();
 
     private LinkageHandler() {
@@ -82,20 +89,18 @@ public class LinkageHandler {
      * @param cart2 EntityMinecart
      */
     protected void adjustVelocity(EntityMinecart cart1, EntityMinecart cart2, LinkageManager.LinkType linkType) {
-        String timer = LINK_A_TIMER;
-        if (linkType == LinkageManager.LinkType.LINK_B)
-            timer = LINK_B_TIMER;
+        CartState state = CartState.get(cart1);
         if (cart1.worldObj.provider.getDimension() != cart2.worldObj.provider.getDimension()) {
-            short count = cart1.getEntityData().getShort(timer);
+            short count = state.getLinkTimer(linkType);
             count++;
             if (count > 200) {
                 LinkageManager.instance().breakLink(cart1, cart2);
                 LinkageManager.printDebug("Reason For Broken Link: Carts in different dimensions.");
             }
-            cart1.getEntityData().setShort(timer, count);
+            state.setLinkTimer(linkType, count);
             return;
         }
-        cart1.getEntityData().setShort(timer, (short) 0);
+        state.setLinkTimer(linkType, (short) 0);
 
         double dist = cart1.getDistanceToEntity(cart2);
         if (dist > MAX_DISTANCE) {
@@ -187,6 +192,100 @@ public class LinkageHandler {
         return Math.copySign(Math.min(Math.abs(force), FORCE_LIMITER), force);
     }
 
+    /**
+     * Solves the spring and damping forces for a whole train at once, the alternative
+     * to calling {@link #adjustVelocity} for each cart and link.
+     *
+     * Each link pulls its two carts together (or pushes them apart) with a single impulse.
+     * The damping uses the relative velocities after every impulse has been applied,
+     * which ties each link to its neighbours in a tri-diagonal system that is solved directly.
+     * Treating the damping implicitly like this keeps long trains from ringing.
+     *
+     * The per-cart path adjusts every link from both ends, so the constants are doubled here to match.
+     *
+     * @param train the train, in link order
+     */
+    private void solveTrain(Train train) {
+        List<EntityMinecart> carts = Lists.newArrayList(train);
+        int links = carts.size() - 1;
+        if (links < 1)
+            return;
+        LinkageManager lm = LinkageManager.instance();
+        double[] unitX = new double[links];
+        double[] unitZ = new double[links];
+        double[] damping = new double[links];
+        // can the front/back cart of each link be adjusted by it, 0 or 1
+        double[] frontFree = new double[links];
+        double[] backFree = new double[links];
+        double[] lower = new double[links];
+        double[] diag = new double[links];
+        double[] upper = new double[links];
+        double[] rhs = new double[links];
+
+        for (int i = 0; i < links; i++) {
+            EntityMinecart front = carts.get(i);
+            EntityMinecart back = carts.get(i + 1);
+            diag[i] = 1.0;
+            // carts missing from the middle of the train leave a gap that isn't a link
+            if (!lm.areLinked(front, back) || isLaunched(front) || isLaunched(back) || isOnElevator(front) || isOnElevator(back))
+                continue;
+
+            double dist = front.getDistanceToEntity(back);
+            if (dist > MAX_DISTANCE) {
+                lm.breakLink(front, back);
+                LinkageManager.printDebug("Reason For Broken Link: Max distance exceeded.");
+                // the broken link is a gap now, the rest of the train is still solved
+                continue;
+            }
+
+            Vec2D unit = Vec2D.subtract(new Vec2D(back.posX, back.posZ), new Vec2D(front.posX, front.posZ));
+            unit.normalize();
+            unitX[i] = unit.getX();
+            unitZ[i] = unit.getY();
+            frontFree[i] = canCartBeAdjustedBy(front, back) ? 1.0 : 0.0;
+            backFree[i] = canCartBeAdjustedBy(back, front) ? 1.0 : 0.0;
+
+            boolean highSpeed = CartTools.isTravellingHighSpeed(front);
+            double stiffness = 2.0 * (highSpeed ? HS_STIFFNESS : STIFFNESS);
+            damping[i] = 2.0 * (highSpeed ? HS_DAMPING : DAMPING);
+            double stretch = dist - getOptimalDistance(front, back);
+            double closing = (back.motionX - front.motionX) * unitX[i] + (back.motionZ - front.motionZ) * unitZ[i];
+
+            diag[i] += damping[i] * (frontFree[i] + backFree[i]);
+            rhs[i] = stiffness * stretch + damping[i] * closing;
+        }
+
+        // a cart between two links passes part of each impulse on to the other link
+        for (int i = 0; i < links; i++) {
+            if (i > 0)
+                lower[i] = -damping[i] * backFree[i - 1] * (unitX[i - 1] * unitX[i] + unitZ[i - 1] * unitZ[i]);
+            if (i < links - 1)
+                upper[i] = -damping[i] * frontFree[i + 1] * (unitX[i + 1] * unitX[i] + unitZ[i + 1] * unitZ[i]);
+        }
+
+        // Thomas algorithm, the system is diagonally dominant so it needs no pivoting
+        for (int i = 1; i < links; i++) {
+            double m = lower[i] / diag[i - 1];
+            diag[i] -= m * upper[i - 1];
+            rhs[i] -= m * rhs[i - 1];
+        }
+        double[] impulse = rhs;
+        impulse[links - 1] = rhs[links - 1] / diag[links - 1];
+        for (int i = links - 2; i >= 0; i--) {
+            impulse[i] = (rhs[i] - upper[i] * impulse[i + 1]) / diag[i];
+        }
+
+        for (int i = 0; i < links; i++) {
+            double force = limitForce(impulse[i]);
+            EntityMinecart front = carts.get(i);
+            EntityMinecart back = carts.get(i + 1);
+            front.motionX += frontFree[i] * force * unitX[i];
+            front.motionZ += frontFree[i] * force * unitZ[i];
+            back.motionX -= backFree[i] * force * unitX[i];
+            back.motionZ -= backFree[i] * force * unitZ[i];
+        }
+    }
+
     /**
      * This function inspects the links and determines if any physics
      * adjustments need to be made.
@@ -200,10 +299,20 @@ public class LinkageHandler {
         if (isOnElevator(cart))
             return;
 
-        boolean linkedA = adjustLinkedCart(cart, LinkageManager.LinkType.LINK_A);
-        boolean linkedB = adjustLinkedCart(cart, LinkageManager.LinkType.LINK_B);
+        boolean solver = RailcraftConfig.useTrainSolver();
+        boolean linkedA = adjustLinkedCart(cart, LinkageManager.LinkType.LINK_A, !solver);
+        boolean linkedB = adjustLinkedCart(cart, LinkageManager.LinkType.LINK_B, !solver);
         boolean linked = linkedA || linkedB;
 
+        // the first cart of the train to update this tick moves the whole train
+        if (linked && solver) {
+            Train train = Train.getTrain(cart);
+            long time = cart.worldObj.getTotalWorldTime();
+            Long solved = solvedTrains.put(train, time);
+            if (solved == null || solved != time)
+                solveTrain(train);
+        }
+
         if (linked && RailcraftModuleManager.isModuleEnabled(ModuleLocomotives.class) && !CartTools.isTravellingHighSpeed(cart)) {
             cart.motionX *= LINK_DRAG;
             cart.motionZ *= LINK_DRAG;
@@ -217,7 +326,7 @@ public class LinkageHandler {
 
     }
 
-    private boolean adjustLinkedCart(EntityMinecart cart, LinkageManager.LinkType linkType) {
+    private boolean adjustLinkedCart(EntityMinecart cart, LinkageManager.LinkType linkType, boolean adjust) {
         boolean linked = false;
         LinkageManager lm = LinkageManager.instance();
         EntityMinecart link = lm.getLinkedCart(cart, linkType);
@@ -228,7 +337,8 @@ public class LinkageHandler {
             }
             if (!isLaunched(link) && !isOnElevator(link)) {
                 linked = true;
-                adjustVelocity(cart, link, linkType);
+                if (adjust)
+                    adjustVelocity(cart, link, linkType);
 //                adjustCartFromHistory(cart, link);
             }
         }
@@ -317,26 +427,19 @@ public class LinkageHandler {
     }
 
     private boolean isLaunched(EntityMinecart cart) {
-        int launched = cart.getEntityData().getInteger("Launched");
-        return launched > 0;
+        return CartState.get(cart).isLaunched();
     }
 
     private boolean isOnElevator(EntityMinecart cart) {
-        int elevator = cart.getEntityData().getByte("elevator");
-        return elevator > 0;
+        return CartState.get(cart).isOnElevator();
     }
 
     @SubscribeEvent
     public void canMinecartTick(EntityEvent.CanUpdate event) {
         if (event.getEntity() instanceof EntityMinecart) {
             EntityMinecart cart = (EntityMinecart) event.getEntity();
-            Train train = Train.getTrain(cart);
-            for (EntityCartWorldspike worldspike : train.getCarts(EntityCartWorldspike.class)) {
-                if (worldspike.hasActiveTicket()) {
-                    event.setCanUpdate(true);
-                    return;
-                }
-            }
+            if (Train.getTrain(cart).hasActiveWorldspike())
+                event.setCanUpdate(true);
         }
     }
 }
@@ -0,0 +1,62 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.carts;
+
+import mods.railcraft.common.core.RailcraftConstants;
+import net.minecraft.entity.item.EntityMinecart;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+
+/**
+ * Access to the private fields of {@link EntityMinecart}.
+ *
+ * The fields are looked up once, by index so it works in both dev and obfuscated environments,
+ * and turned into method handles. Calling those is about as cheap as a normal field access,
+ * unlike looking the field up by reflection on every call.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class MinecartAccess {
+    private static final MethodHandle GET_IN_REVERSE;
+    private static final MethodHandle SET_IN_REVERSE;
+
+    static {
+        try {
+            Field isInReverse = EntityMinecart.class.getDeclaredFields()[RailcraftConstants.IS_REVERSED_VARIABLE_INDEX];
+            isInReverse.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_IN_REVERSE = lookup.unreflectGetter(isInReverse);
+            SET_IN_REVERSE = lookup.unreflectSetter(isInReverse);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to access EntityMinecart.isInReverse", e);
+        }
+    }
+
+    private MinecartAccess() {
+    }
+
+    public static boolean isInReverse(EntityMinecart cart) {
+        try {
+            return (boolean) GET_IN_REVERSE.invokeExact(cart);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to read EntityMinecart.isInReverse", e);
+        }
+    }
+
+    public static void setInReverse(EntityMinecart cart, boolean reverse) {
+        try {
+            SET_IN_REVERSE.invokeExact(cart, reverse);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to write EntityMinecart.isInReverse", e);
+        }
+    }
+}
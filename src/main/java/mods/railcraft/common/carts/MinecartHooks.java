@@ -31,7 +31,6 @@ import net.minecraft.entity.monster.EntityIronGolem;
 import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.nbt.NBTTagCompound;
 import net.minecraft.util.math.AxisAlignedBB;
 import net.minecraft.world.World;
 import net.minecraftforge.common.IMinecartCollisionHandler;
@@ -39,14 +38,12 @@ import net.minecraftforge.event.entity.minecart.MinecartCollisionEvent;
 import net.minecraftforge.event.entity.minecart.MinecartInteractEvent;
 import net.minecraftforge.event.entity.minecart.MinecartUpdateEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
-import net.minecraftforge.fml.common.ObfuscationReflectionHelper;
 import net.minecraftforge.fml.common.eventhandler.Event;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 
 import javax.annotation.Nullable;
 import java.util.List;
 
-import static mods.railcraft.common.core.RailcraftConstants.IS_REVERSED_VARIABLE_INDEX;
 import static mods.railcraft.common.util.inventory.InvTools.dec;
 import static mods.railcraft.common.util.inventory.InvTools.isEmpty;
 
@@ -118,8 +115,7 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
         if (isLiving && !isPlayer && cart.canBeRidden() && !(other instanceof EntityIronGolem)
                 && cart.motionX * cart.motionX + cart.motionZ * cart.motionZ > 0.001D
                 && !cart.isBeingRidden() && !other.isRiding()) {
-            int mountPrevention = cart.getEntityData().getInteger("MountPrevention");
-            if (mountPrevention <= 0)
+            if (CartState.get(cart).getMountPrevention() <= 0)
                 other.startRiding(cart);
         }
 
@@ -231,7 +227,7 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
     }
 
     private void land(EntityMinecart cart) {
-        cart.getEntityData().setInteger("Launched", 0);
+        CartState.get(cart).setLaunched(0);
         cart.setMaxSpeedAirLateral(EntityMinecart.defaultMaxSpeedAirLateral);
         cart.setMaxSpeedAirVertical(EntityMinecart.defaultMaxSpeedAirVertical);
         cart.setDragAir(EntityMinecart.defaultDragAir);
@@ -241,26 +237,25 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
     @SubscribeEvent
     public void onMinecartUpdate(MinecartUpdateEvent event) {
         EntityMinecart cart = event.getMinecart();
-        NBTTagCompound data = cart.getEntityData();
+        CartState state = CartState.get(cart);
 
         // Fix flip
         float distance = MathTools.getDistanceBetweenAngles(cart.rotationYaw, cart.prevRotationYaw);
         float cutoff = 120F;
         if (distance < -cutoff || distance >= cutoff) {
             cart.rotationYaw += 180.0F;
-            boolean reverse = ObfuscationReflectionHelper.getPrivateValue(EntityMinecart.class, cart, IS_REVERSED_VARIABLE_INDEX);
-            ObfuscationReflectionHelper.setPrivateValue(EntityMinecart.class, cart, !reverse, IS_REVERSED_VARIABLE_INDEX);
+            MinecartAccess.setInReverse(cart, !MinecartAccess.isInReverse(cart));
             cart.rotationYaw = cart.rotationYaw % 360.0F;
         }
 
 
 //        if (SeasonPlugin.isGhostTrain(cart)) {
 //            cart.setGlowing(true);
-//            data.setBoolean("ghost", true);
+//            state.setGhost(true);
 //        } else
-        if (data.getBoolean("ghost")) {
+        if (state.isGhost()) {
             cart.setGlowing(false);
-            data.setBoolean("ghost", false);
+            state.setGhost(false);
         }
 
 // Code Added by Yopu to replace vanilla carts, deemed incomplete and unnecessary, pursuing other solutions
@@ -278,7 +273,7 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
 //        }
 
         Block block = WorldPlugin.getBlock(cart.worldObj, event.getPos());
-        int launched = data.getInteger("Launched");
+        int launched = state.getLaunched();
         if (TrackTools.isRailBlock(block)) {
             cart.fallDistance = 0;
             if (cart.isBeingRidden())
@@ -286,41 +281,35 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
             if (launched > 1)
                 land(cart);
         } else if (launched == 1) {
-            data.setInteger("Launched", 2);
+            state.setLaunched(2);
             cart.setCanUseRail(true);
         } else if (launched > 1 && (cart.onGround || cart.isInsideOfMaterial(Material.CIRCUITS)))
             land(cart);
 
-        int mountPrevention = data.getInteger("MountPrevention");
-        if (mountPrevention > 0) {
-            mountPrevention--;
-            data.setInteger("MountPrevention", mountPrevention);
-        }
+        int mountPrevention = state.getMountPrevention();
+        if (mountPrevention > 0)
+            state.setMountPrevention(mountPrevention - 1);
 
-        byte elevator = data.getByte("elevator");
+        byte elevator = state.getElevator();
         if (elevator < BlockTrackElevator.ELEVATOR_TIMER) {
             cart.setNoGravity(false);
         }
-        if (elevator > 0) {
-            elevator--;
-            data.setByte("elevator", elevator);
-        }
+        if (elevator > 0)
+            state.setElevator((byte) (elevator - 1));
 
-        byte derail = data.getByte("derail");
-        if (derail > 0) {
-            derail--;
-            data.setByte("derail", derail);
-        }
+        byte derail = state.getDerail();
+        if (derail > 0)
+            state.setDerail((byte) (derail - 1));
 
-        if (data.getBoolean("explode")) {
-            cart.getEntityData().setBoolean("explode", false);
+        if (state.isExplode()) {
+            state.setExplode(false);
             CartTools.explodeCart(cart);
         }
 
-        if (data.getBoolean(CartTools.HIGH_SPEED_TAG))
+        if (state.isHighSpeed())
             if (CartTools.cartVelocityIsLessThan(cart, HighSpeedTools.SPEED_CUTOFF))
-                data.setBoolean(CartTools.HIGH_SPEED_TAG, false);
-            else if (data.getInteger("Launched") == 0)
+                state.setHighSpeed(false);
+            else if (state.getLaunched() == 0)
                 HighSpeedTools.checkSafetyAndExplode(cart.worldObj, event.getPos(), cart);
 
 
@@ -393,7 +382,7 @@ public final class MinecartHooks implements IMinecartCollisionHandler {
     }
 
     private void primeToExplode(EntityMinecart cart) {
-        cart.getEntityData().setBoolean("explode", true);
+        CartState.get(cart).setExplode(true);
     }
 
     @SubscribeEvent
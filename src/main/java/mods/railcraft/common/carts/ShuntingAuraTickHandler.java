@@ -10,47 +10,138 @@
 
 package mods.railcraft.common.carts;
 
+import com.google.common.collect.MapMaker;
 import mods.railcraft.common.items.ItemGoggles;
 import mods.railcraft.common.plugins.forge.EntitySearcher;
-import mods.railcraft.common.util.misc.Game;
 import mods.railcraft.common.util.network.PacketDispatcher;
 import mods.railcraft.common.util.network.PacketShuntingAura;
-import net.minecraft.entity.EntityLivingBase;
 import net.minecraft.entity.item.EntityMinecart;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.item.ItemStack;
-import net.minecraftforge.event.entity.player.PlayerEvent;
+import net.minecraft.util.math.AxisAlignedBB;
+import net.minecraft.world.World;
 import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
 
-import java.util.List;
+import javax.annotation.Nullable;
+import java.util.*;
 
 /**
+ * Keeps the Shunting Aura of each player wearing the goggles up to date.
+ *
+ * Each player gets a subscription that remembers what was last sent to them.
+ * The first update is a full snapshot, after that only the carts that were added,
+ * removed or had their train or links change are sent, and nothing is sent if nothing changed.
+ * The client draws the carts where they are, so movement alone doesn't need sending.
+ *
  * @author CovertJaguar <http://www.railcraft.info>
  */
 public class ShuntingAuraTickHandler {
-
-    private int clock;
+    private static final int UPDATE_INTERVAL = 16;
+    private static final float RANGE = 32F;
+    private final Map<EntityPlayerMP, Subscription> subscriptions = new MapMaker().weakKeys().makeMap();
 
     @SubscribeEvent
-    public void tick(PlayerEvent.LivingUpdateEvent event) {
-        EntityLivingBase entity = event.getEntityLiving();
-        if (Game.isClient(entity.worldObj))
+    public void tick(TickEvent.PlayerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !(event.player instanceof EntityPlayerMP))
             return;
-        clock++;
-        if (clock % 16 != 0)
+        EntityPlayerMP player = (EntityPlayerMP) event.player;
+        if (!isUsingAura(player)) {
+            subscriptions.remove(player);
             return;
-        if (entity instanceof EntityPlayerMP) {
-            EntityPlayerMP player = (EntityPlayerMP) entity;
-            if (ItemGoggles.isPlayerWearing(player)) {
-                ItemStack goggles = ItemGoggles.getGoggles(player);
-                ItemGoggles.GoggleAura aura = ItemGoggles.getCurrentAura(goggles);
-                if (aura == ItemGoggles.GoggleAura.SHUNTING) {
-                    List<EntityMinecart> carts = EntitySearcher.findMinecarts().around(player, 32F).at(player.worldObj);
-                    PacketShuntingAura pkt = new PacketShuntingAura(carts);
-                    PacketDispatcher.sendToPlayer(pkt.getPacket(), player);
+        }
+        Subscription subscription = subscriptions.computeIfAbsent(player, p -> new Subscription());
+        if (subscription.clock++ % UPDATE_INTERVAL == 0)
+            subscription.update(player);
+    }
+
+    private static boolean isUsingAura(EntityPlayerMP player) {
+        if (!ItemGoggles.isPlayerWearing(player))
+            return false;
+        ItemStack goggles = ItemGoggles.getGoggles(player);
+        return ItemGoggles.getCurrentAura(goggles) == ItemGoggles.GoggleAura.SHUNTING;
+    }
+
+    private static class Subscription {
+        private final Map<UUID, CartLinks> sent = new HashMap<>();
+        private final List<EntityMinecart> carts = new ArrayList<>();
+        @Nullable
+        private World world;
+        private int clock;
+        private int stamp;
+
+        private void update(EntityPlayerMP player) {
+            boolean snapshot = world != player.worldObj;
+            if (snapshot) {
+                world = player.worldObj;
+                sent.clear();
+            }
+
+            carts.clear();
+            AxisAlignedBB area = player.getEntityBoundingBox().expandXyz(RANGE);
+            CartSpatialIndex index = CartRegistry.getIndex(player.worldObj);
+            if (index != null)
+                index.collect(area, carts, null);
+            else
+                carts.addAll(EntitySearcher.findMinecarts().inArea(area).at(player.worldObj));
+
+            stamp++;
+            List<CartLinks> changed = new ArrayList<>();
+            LinkageManager lm = LinkageManager.instance();
+            for (EntityMinecart cart : carts) {
+                UUID id = cart.getPersistentID();
+                UUID train = Train.getTrainUUID(cart);
+                UUID linkA = lm.getLinkA(cart);
+                UUID linkB = lm.getLinkB(cart);
+                CartLinks links = sent.get(id);
+                if (links == null || !links.matches(train, linkA, linkB)) {
+                    links = new CartLinks(id, train, linkA, linkB);
+                    sent.put(id, links);
+                    changed.add(links);
                 }
+                links.stamp = stamp;
+            }
+            carts.clear();
+
+            List<UUID> removed = new ArrayList<>();
+            Iterator<CartLinks> it = sent.values().iterator();
+            while (it.hasNext()) {
+                CartLinks links = it.next();
+                if (links.stamp != stamp) {
+                    removed.add(links.id);
+                    it.remove();
+                }
+            }
+
+            if (snapshot || !changed.isEmpty() || !removed.isEmpty()) {
+                PacketShuntingAura pkt = new PacketShuntingAura(snapshot, changed, removed);
+                PacketDispatcher.sendToPlayer(pkt.getPacket(), player);
             }
         }
     }
 
+    /**
+     * What the client needs to know about a cart to draw its links.
+     */
+    public static final class CartLinks {
+        public final UUID id;
+        @Nullable
+        public final UUID train;
+        @Nullable
+        public final UUID linkA;
+        @Nullable
+        public final UUID linkB;
+        private int stamp;
+
+        public CartLinks(UUID id, @Nullable UUID train, @Nullable UUID linkA, @Nullable UUID linkB) {
+            this.id = id;
+            this.train = train;
+            this.linkA = linkA;
+            this.linkB = linkB;
+        }
+
+        private boolean matches(@Nullable UUID train, @Nullable UUID linkA, @Nullable UUID linkB) {
+            return Objects.equals(this.train, train) && Objects.equals(this.linkA, linkA) && Objects.equals(this.linkB, linkB);
+        }
+    }
 }
@@ -38,12 +38,28 @@ import java.util.stream.StreamSupport;
 public class Train implements Iterable<EntityMinecart> {
     public static final String TRAIN_NBT = "rcTrain";
     private static final Map<World, Map<UUID, Train>> trains = new MapMaker().weakKeys().makeMap();
+    /**
+     * The train each cart was last seen in, kept in step with the train tag.
+     */
+    private static final Map<EntityMinecart, Train> cartTrains = new MapMaker().weakKeys().makeMap();
     private final UUID uuid;
     private final LinkedList<UUID> carts = new LinkedList<UUID>();
     private final List<UUID> safeCarts = Collections.unmodifiableList(carts);
     private final Collection<UUID> lockingTracks = new HashSet<UUID>();
     private final World world;
     private TrainState trainState = TrainState.NORMAL;
+    /**
+     * Set when a member cart leaves or rejoins the world, so the membership must be checked again.
+     */
+    private boolean dirty;
+    private boolean deleted;
+    private boolean hasActiveWorldspike;
+    private boolean worldspikesChanged = true;
+    private float maxSpeed;
+    private int runningLocomotives;
+    private boolean speedChanged = true;
+    private boolean speedApplied;
+    private int version;
 
     public Train(EntityMinecart cart) {
         uuid = UUID.randomUUID();
@@ -57,9 +73,13 @@ public class Train implements Iterable<EntityMinecart> {
     }
 
     public static Train getTrain(EntityMinecart cart) {
+        Train train = cartTrains.get(cart);
+        if (train != null && !train.dirty && !train.deleted)
+            return train;
+
         Map<UUID, Train> trainMap = getTrainMap(cart.worldObj);
-        Train train = trainMap.get(getTrainUUID(cart));
-        if (train != null && (!train.containsCart(cart) || !train.isValid(cart.worldObj) || train.isEmpty())) {
+        train = trainMap.get(getTrainUUID(cart));
+        if (train != null && (train.dirty || !train.containsCart(cart) || !train.isValid(cart.worldObj) || train.isEmpty())) {
             train.buildTrain(cart);
         }
         if (train == null) {
@@ -78,10 +98,40 @@ public class Train implements Iterable<EntityMinecart> {
 
     @Nullable
     public static UUID getTrainUUID(EntityMinecart cart) {
+        Train train = cartTrains.get(cart);
+        if (train != null && !train.deleted)
+            return train.uuid;
         NBTTagCompound nbt = cart.getEntityData();
         return NBTPlugin.readUUID(nbt, TRAIN_NBT);
     }
 
+    /**
+     * Called when a cart is removed from the world, either because it died or its chunk unloaded.
+     */
+    static void onCartRemoved(EntityMinecart cart) {
+        Train train = cartTrains.remove(cart);
+        if (train != null)
+            train.dirty = true;
+    }
+
+    /**
+     * Called when a cart is added to the world, it may be rejoining a train that was rebuilt without it.
+     */
+    static void onCartAdded(EntityMinecart cart) {
+        Train train = getTrainUnsafe(cart);
+        if (train != null)
+            train.dirty = true;
+    }
+
+    /**
+     * Called when a worldspike cart gains or loses its chunk ticket.
+     */
+    static void onWorldspikeTicketChanged(EntityCartWorldspike cart) {
+        Train train = getTrainUnsafe(cart);
+        if (train != null)
+            train.worldspikesChanged = true;
+    }
+
     public static boolean areInSameTrain(@Nullable EntityMinecart cart1, @Nullable EntityMinecart cart2) {
         if (cart1 == null || cart2 == null)
             return false;
@@ -124,11 +174,13 @@ public class Train implements Iterable<EntityMinecart> {
 
     public static void removeTrainTag(EntityMinecart cart) {
         cart.getEntityData().removeTag(TRAIN_NBT);
+        cartTrains.remove(cart);
     }
 
     public static void addTrainTag(EntityMinecart cart, Train train) {
         UUID trainId = train.getUUID();
         NBTPlugin.writeUUID(cart.getEntityData(), TRAIN_NBT, trainId);
+        cartTrains.put(cart, train);
     }
 
 //    @Nullable
@@ -160,6 +212,7 @@ public class Train implements Iterable<EntityMinecart> {
     private void buildTrain(EntityMinecart first) {
         resetTrain();
         buildTrain(null, first);
+        dirty = false;
     }
 
     private void buildTrain(@Nullable EntityMinecart prev, EntityMinecart next) {
@@ -194,6 +247,7 @@ public class Train implements Iterable<EntityMinecart> {
     protected void deleteTrain() {
         resetTrain();
         getTrainMap(world).remove(getUUID());
+        deleted = true;
     }
 
     public static void deleteTrain(EntityMinecart cart) {
@@ -213,23 +267,34 @@ public class Train implements Iterable<EntityMinecart> {
         }
         carts.clear();
         lockingTracks.clear();
+        worldspikesChanged = true;
+        speedChanged = true;
+        version++;
     }
 
     public UUID getUUID() {
         return uuid;
     }
 
+    /**
+     * Changes whenever carts are added to or removed from the train, for caching things that depend on its makeup.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     public void rebuild(EntityMinecart cart) {
         buildTrain(cart);
     }
 
     private void _addLink(@Nullable EntityMinecart cartBase, EntityMinecart cartNew) {
-        if (cartBase == null || carts.getFirst() == cartBase.getPersistentID())
+        if (cartBase == null || carts.getFirst().equals(cartBase.getPersistentID()))
             carts.addFirst(cartNew.getPersistentID());
-        else if (carts.getLast() == cartBase.getPersistentID())
+        else if (carts.getLast().equals(cartBase.getPersistentID()))
             carts.addLast(cartNew.getPersistentID());
         else
             return;
+        version++;
         Train train = getTrainUnsafe(cartNew);
         if (train != null && train != this)
             train._removeCart(cartNew);
@@ -248,6 +313,9 @@ public class Train implements Iterable<EntityMinecart> {
     private boolean _removeCart(UUID cart) {
         boolean removed = carts.remove(cart);
         if (removed) {
+            worldspikesChanged = true;
+            speedChanged = true;
+            version++;
             if (carts.isEmpty()) {
                 deleteTrain();
             }
@@ -332,22 +400,53 @@ public class Train implements Iterable<EntityMinecart> {
         return carts.isEmpty();
     }
 
-    public int getNumRunningLocomotives() {
+    /**
+     * Flags the speed limit for recalculation, called when the carts change
+     * or a locomotive starts or stops running.
+     */
+    public void markSpeedChanged() {
+        speedChanged = true;
+    }
+
+    private void updateSpeed() {
+        if (!speedChanged)
+            return;
+        // cleared first, the energy carts ask for the locomotive count while we work out the speed
+        speedChanged = false;
         int count = 0;
         for (EntityMinecart cart : this) {
             if (cart instanceof EntityLocomotive && ((EntityLocomotive) cart).isRunning())
                 count++;
         }
-        return count;
+        runningLocomotives = count;
+        maxSpeed = calculateMaxSpeed();
+        speedApplied = false;
+    }
+
+    public int getNumRunningLocomotives() {
+        updateSpeed();
+        return runningLocomotives;
     }
 
+    /**
+     * Applies the speed limit to the carts, if it might have changed since last time.
+     */
     public void refreshMaxSpeed() {
-        setMaxSpeed(getMaxSpeed());
+        float speed = getMaxSpeed();
+        if (!speedApplied) {
+            setMaxSpeed(speed);
+            speedApplied = true;
+        }
     }
 
     public float getMaxSpeed() {
+        updateSpeed();
+        return maxSpeed;
+    }
+
+    private float calculateMaxSpeed() {
         float speed = 1.2F;
-        int numLocomotives = getNumRunningLocomotives();
+        int numLocomotives = runningLocomotives;
         for (EntityMinecart c : this) {
             float baseSpeed = c.getMaxCartSpeedOnRail();
             if (numLocomotives > 0 && !(c instanceof CartBaseEnergy) && c.hasCapability(CapabilitiesCharge.CART_BATTERY, null)) {
@@ -367,6 +466,17 @@ public class Train implements Iterable<EntityMinecart> {
         }
     }
 
+    /**
+     * @return true if any worldspike cart in the train is holding a chunk ticket
+     */
+    public boolean hasActiveWorldspike() {
+        if (worldspikesChanged) {
+            hasActiveWorldspike = getCarts(EntityCartWorldspike.class).stream().anyMatch(EntityCartWorldspike::hasActiveTicket);
+            worldspikesChanged = false;
+        }
+        return hasActiveWorldspike;
+    }
+
     public boolean isTrainLockedDown() {
         return !lockingTracks.isEmpty();
     }
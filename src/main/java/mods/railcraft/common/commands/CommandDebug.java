@@ -11,6 +11,7 @@ package mods.railcraft.common.commands;
 
 import mods.railcraft.api.signals.*;
 import mods.railcraft.common.blocks.RailcraftTileEntity;
+import mods.railcraft.common.blocks.charge.ChargeManager;
 import mods.railcraft.common.blocks.machine.wayobjects.boxes.TileBoxBase;
 import mods.railcraft.common.carts.CartTools;
 import mods.railcraft.common.plugins.forge.ChatPlugin;
@@ -49,6 +50,7 @@ public class CommandDebug extends SubCommand {
     public CommandDebug() {
         super("debug");
         addChildCommand(new CommandDebugTile());
+        addChildCommand(new CommandDebugCharge());
     }
 
     private static void printLine(ICommandSender sender, String msg, Object... args) {
@@ -142,6 +144,23 @@ public class CommandDebug extends SubCommand {
         }
     }
 
+    public static class CommandDebugCharge extends SubCommand {
+        public CommandDebugCharge() {
+            super("charge");
+        }
+
+        @Override
+        public void executeSubCommand(MinecraftServer server, ICommandSender sender, String[] args) throws CommandException {
+            if (args.length > 1)
+                CommandHelpers.throwWrongUsage(sender, this);
+
+            World world = CommandHelpers.getWorld(sender, this, args, 0);
+            for (String s : ChargeManager.getNetwork(world).getDebugOutput()) {
+                printLine(sender, s);
+            }
+        }
+    }
+
     public static class CommandDebugTileController extends SubCommand {
         public CommandDebugTileController() {
             super("controller");
@@ -76,12 +76,17 @@ public class RailcraftConfig {
     private static String[] worldspikeFuelPassiveArray;
     private static String boreMineableBlocksString;
     private static float maxHighSpeed = 1.1f;
+    private static int highSpeedLookAhead;
     private static boolean boreDestroysBlocks;
     private static boolean boreMinesAllBlocks;
     private static boolean locomotiveDamageMobs;
     private static boolean printLinkingDebug;
+    private static boolean useTrainSolver;
+    private static boolean detectorsSleepWhenIdle;
     private static boolean printWorldspikeDebug;
     private static boolean printChargeDebug;
+    private static int chargeMetricsLogInterval;
+    private static int chargeWorkerThreads;
     private static boolean deleteWorldspikes;
     private static String[] worldspikeCrafting;
     private static boolean worldspikesCanInteractWithPipes;
@@ -153,6 +158,8 @@ public class RailcraftConfig {
         configMain.removeCategory(configMain.getCategory("anchors"));
 
         printChargeDebug = get(CAT_CHARGE, "printDebug", false, "change to '{t}=true' to enabled Charge Network debug spam");
+        chargeMetricsLogInterval = get(CAT_CHARGE, "metricsLogInterval", 0, 0, 72000, "change to a number of ticks to periodically write Charge Network metrics to 'railcraft/charge_metrics.csv' in the world folder, 0 disables, min=0, default=0, max=72000");
+        chargeWorkerThreads = get(CAT_CHARGE, "workerThreads", 0, 0, 16, "change to a number of threads to balance independent Charge Network graphs in parallel, only worth it with lots of separate networks, 0 disables, min=0, default=0, max=16");
 
         loadWorldspikeSettings();
         loadBlockTweaks();
@@ -249,6 +256,8 @@ public class RailcraftConfig {
 
         allowTankStacking = get(CAT_TWEAKS_BLOCKS + ".irontank", "allow.stacking", true, "Change to '{t}=false' to disable the stacking of Iron Tanks");
 
+        detectorsSleepWhenIdle = get(CAT_TWEAKS_BLOCKS + ".detectors", "sleep.when.idle", true, "change to '{t}=false' to have Detectors keep checking for carts when there are none nearby, instead of waiting to be told that a cart came near");
+
         SignalTools.printSignalDebug = get(CAT_TWEAKS_BLOCKS + ".signals", "printDebug", false, "change to '{t}=true' to log debug info for Signal Blocks");
         SignalTools.signalUpdateInterval = get(CAT_TWEAKS_BLOCKS + ".signals", "update.interval", 4, "measured in tick, smaller numbers update more often, resulting in more sensitive signals, but cost more cpu power, default = 4");
 
@@ -268,6 +277,8 @@ public class RailcraftConfig {
     private static void loadTrackTweaks() {
         maxHighSpeed = get(CAT_TWEAKS_TRACKS + ".speed", "max.speed", 0.6f, 0.8f, 1.2f, "change '{t}' to limit max speed on high speed rails, useful if your computer can't keep up with chunk loading, min=0.6, default=0.8, max=1.2");
 
+        highSpeedLookAhead = get(CAT_TWEAKS_TRACKS + ".speed", "look.ahead", 1, 2, 16, "change '{t}' to set how many blocks ahead high speed carts look for slopes to slow down for, min=1, default=2, max=16");
+
         launchRailMaxForce = get(CAT_TWEAKS_TRACKS + ".launch", "force.max", 5, 30, 50, "change the value to your desired max launch rail force, min=5, default=30, max=50");
 
         String[] strings = get(CAT_TWEAKS_TRACKS + ".speed", "entities.excluded", new String[0], "add entity names to exclude them from explosions caused by high speed collisions");
@@ -292,6 +303,7 @@ public class RailcraftConfig {
         minecartsCollideWithItems = get(CAT_TWEAKS_CARTS + ".general", "collideWithItems", false, "change to '{t}=true' to restore minecart collisions with dropped items, ignored if 'register.collision.handler=false'");
 
         printLinkingDebug = get(CAT_TWEAKS_CARTS + ".general", "printLinkingDebug", false, "change to '{t}=true' to log debug info for Cart Linking");
+        useTrainSolver = get(CAT_TWEAKS_CARTS + ".general", "trainSolver", false, "change to '{t}=true' to solve the link physics for a whole train at once instead of one cart at a time, steadier for very long trains");
 
         adjustBasicCartDrag = get(CAT_TWEAKS_CARTS + ".basic", "adjustDrag", true, "change to '{t}=false' to give basic carts the original vanilla drag values, after changing you may need to replace the carts to see any change in game");
 
@@ -733,6 +745,14 @@ public class RailcraftConfig {
         return printLinkingDebug;
     }
 
+    public static boolean useTrainSolver() {
+        return useTrainSolver;
+    }
+
+    public static boolean detectorsSleepWhenIdle() {
+        return detectorsSleepWhenIdle;
+    }
+
     public static boolean printWorldspikeDebug() {
         return printWorldspikeDebug;
     }
@@ -741,6 +761,14 @@ public class RailcraftConfig {
         return printChargeDebug;
     }
 
+    public static int chargeMetricsLogInterval() {
+        return chargeMetricsLogInterval;
+    }
+
+    public static int chargeWorkerThreads() {
+        return chargeWorkerThreads;
+    }
+
     public static boolean worldspikesCanInteractWithPipes() {
         return worldspikesCanInteractWithPipes;
     }
@@ -809,6 +837,10 @@ public class RailcraftConfig {
         return maxHighSpeed;
     }
 
+    public static int getHighSpeedLookAhead() {
+        return highSpeedLookAhead;
+    }
+
     public static int getMinecartStackSize() {
         return minecartStackSize;
     }
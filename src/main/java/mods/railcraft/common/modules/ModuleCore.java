@@ -20,6 +20,7 @@ import mods.railcraft.common.blocks.charge.CapabilityCartBatterySetup;
 import mods.railcraft.common.blocks.machine.MachineTileRegistry;
 import mods.railcraft.common.blocks.machine.MultiBlockHelper;
 import mods.railcraft.common.blocks.tracks.TrackConstants;
+import mods.railcraft.common.blocks.tracks.behaivor.TrackTopologyCache;
 import mods.railcraft.common.carts.*;
 import mods.railcraft.common.commands.CommandAdmin;
 import mods.railcraft.common.commands.CommandDebug;
@@ -43,6 +44,7 @@ import mods.railcraft.common.util.inventory.InvTools;
 import mods.railcraft.common.util.misc.Game;
 import mods.railcraft.common.util.misc.RailcraftDamageSource;
 import mods.railcraft.common.util.network.PacketBuilder;
+import mods.railcraft.common.util.network.TileSyncDispatcher;
 import net.minecraft.block.BlockDispenser;
 import net.minecraft.creativetab.CreativeTabs;
 import net.minecraft.dispenser.BehaviorDefaultDispenseItem;
@@ -149,14 +151,18 @@ public class ModuleCore extends RailcraftModulePayload {
                 BuildcraftPlugin.init();
 
                 CapabilityCartBatterySetup.register();
+                CapabilityCartStateSetup.register();
 
                 MinecraftForge.EVENT_BUS.register(CrowbarHandler.instance());
                 MinecraftForge.EVENT_BUS.register(MinecartHooks.getInstance());
                 MinecraftForge.EVENT_BUS.register(LinkageHandler.getInstance());
+                MinecraftForge.EVENT_BUS.register(CartRegistry.getEventListener());
+                MinecraftForge.EVENT_BUS.register(TrackTopologyCache.getEventListener());
                 MinecraftForge.EVENT_BUS.register(new CraftingHandler());
                 MinecraftForge.EVENT_BUS.register(new SoundLimiterTicker());
                 MinecraftForge.EVENT_BUS.register(new MinecartRiderAIDisabler());
                 MinecraftForge.EVENT_BUS.register(new ShuntingAuraTickHandler());
+                MinecraftForge.EVENT_BUS.register(TileSyncDispatcher.getEventListener());
                 MinecraftForge.EVENT_BUS.register(new Object() {
                     @SubscribeEvent
                     public void logout(PlayerEvent.PlayerLoggedOutEvent event) {
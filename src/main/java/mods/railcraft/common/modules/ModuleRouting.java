@@ -19,8 +19,10 @@ import mods.railcraft.common.items.RailcraftItems;
 import mods.railcraft.common.plugins.forge.CraftingPlugin;
 import mods.railcraft.common.util.crafting.RoutingTableCopyRecipe;
 import mods.railcraft.common.util.crafting.RoutingTicketCopyRecipe;
+import mods.railcraft.common.util.routing.RoutePlanner;
 import net.minecraft.init.Blocks;
 import net.minecraft.item.ItemStack;
+import net.minecraftforge.common.MinecraftForge;
 
 /**
  * @author CovertJaguar <http://www.railcraft.info>
@@ -42,6 +44,11 @@ public class ModuleRouting extends RailcraftModulePayload {
                 );
             }
 
+            @Override
+            public void preInit() {
+                MinecraftForge.EVENT_BUS.register(RoutePlanner.getEventListener());
+            }
+
             @Override
             public void init() {
                 if (RailcraftItems.ROUTING_TABLE.isEnabled())
@@ -12,6 +12,8 @@ package mods.railcraft.common.plugins.forge;
 
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import mods.railcraft.common.carts.CartRegistry;
+import mods.railcraft.common.carts.CartSpatialIndex;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.item.EntityMinecart;
 import net.minecraft.util.EntitySelectors;
@@ -20,6 +22,7 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import org.apache.commons.lang3.ArrayUtils;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -51,9 +54,19 @@ public class EntitySearcher {
             this.entityClass = entityClass;
         }
 
+        @SuppressWarnings("unchecked")
         public List<T> at(World world) {
             if (searchBox == null)
                 throw new NullPointerException("Improperly defined EntitySearcher");
+            if (EntityMinecart.class.isAssignableFrom(entityClass)) {
+                CartSpatialIndex index = CartRegistry.getIndex(world);
+                if (index != null) {
+                    List<EntityMinecart> carts = new ArrayList<>();
+                    index.collect(searchBox, carts, cart -> entityClass.isInstance(cart) && filter.apply(cart));
+                    // every cart in the list passed the class check
+                    return (List<T>) (List<?>) carts;
+                }
+            }
             return world.getEntitiesWithinAABB(entityClass, searchBox, filter);
         }
 
@@ -0,0 +1,214 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+
+package mods.railcraft.common.util.collections;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Base for the primitive long keyed maps.
+ *
+ * Entries are kept in dense arrays in insertion order, with an open addressed
+ * table of slot numbers on top for lookups. Removed entries leave a hole in the
+ * dense arrays that is reclaimed the next time the arrays fill up.
+ * This keeps iteration in insertion order, like a LinkedHashMap, without boxing the keys.
+ *
+ * Not thread safe, and the map must not be modified while iterating over it.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public abstract class AbstractLongMap {
+    private static final int MIN_CAPACITY = 4;
+    private static final int EMPTY = -1;
+
+    protected long[] keys;
+    protected boolean[] live;
+    private int[] index;
+    protected int slots;
+    private int size;
+    private int head;
+
+    protected AbstractLongMap(int expectedSize) {
+        int capacity = Math.max(MIN_CAPACITY, expectedSize);
+        keys = new long[capacity];
+        live = new boolean[capacity];
+        buildIndex();
+    }
+
+    /**
+     * Grow the value storage to the given capacity, keeping existing values.
+     */
+    protected abstract void resizeValues(int capacity);
+
+    protected abstract void moveValue(int from, int to);
+
+    protected abstract void clearValue(int slot);
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    public final boolean isEmpty() {
+        return size == 0;
+    }
+
+    public final boolean containsKey(long key) {
+        return findSlot(key) != EMPTY;
+    }
+
+    /**
+     * @return the first key in insertion order
+     * @throws NoSuchElementException if the map is empty
+     */
+    public final long firstKey() {
+        while (head < slots && !live[head]) {
+            head++;
+        }
+        if (head >= slots)
+            throw new NoSuchElementException();
+        return keys[head];
+    }
+
+    public void clear() {
+        for (int slot = 0; slot < slots; slot++) {
+            clearValue(slot);
+        }
+        Arrays.fill(live, false);
+        Arrays.fill(index, EMPTY);
+        slots = 0;
+        size = 0;
+        head = 0;
+    }
+
+    protected final int findSlot(long key) {
+        int i = findIndex(key);
+        return i == EMPTY ? EMPTY : index[i];
+    }
+
+    private int findIndex(long key) {
+        int mask = index.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int slot = index[i];
+            if (slot == EMPTY)
+                return EMPTY;
+            if (keys[slot] == key)
+                return i;
+        }
+    }
+
+    /**
+     * Finds the slot for the key, adding a new one if it's not already in the map.
+     * New slots are flagged in the sign bit, use {@link #slotOf(int)} to strip it.
+     */
+    protected final int findOrAddSlot(long key) {
+        int slot = findSlot(key);
+        if (slot != EMPTY)
+            return slot;
+        if (slots == keys.length)
+            rehash(size < keys.length / 2 ? keys.length : keys.length * 2);
+        slot = slots++;
+        keys[slot] = key;
+        live[slot] = true;
+        size++;
+        insertIndex(key, slot);
+        return slot | Integer.MIN_VALUE;
+    }
+
+    protected static int slotOf(int slot) {
+        return slot & Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the slot the key occupied, or -1 if it wasn't in the map
+     */
+    protected final int removeSlot(long key) {
+        int i = findIndex(key);
+        if (i == EMPTY)
+            return EMPTY;
+        int slot = index[i];
+        live[slot] = false;
+        size--;
+        deleteIndex(i);
+        return slot;
+    }
+
+    private void insertIndex(long key, int slot) {
+        int mask = index.length - 1;
+        int i = hash(key) & mask;
+        while (index[i] != EMPTY) {
+            i = (i + 1) & mask;
+        }
+        index[i] = slot;
+    }
+
+    /**
+     * Backward shift deletion, so lookups never have to skip over tombstones.
+     */
+    private void deleteIndex(int i) {
+        int mask = index.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int slot = index[j];
+            if (slot == EMPTY)
+                break;
+            int home = hash(keys[slot]) & mask;
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                index[i] = slot;
+                i = j;
+            }
+        }
+        index[i] = EMPTY;
+    }
+
+    private void rehash(int capacity) {
+        int next = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot]) {
+                if (slot != next) {
+                    keys[next] = keys[slot];
+                    live[next] = true;
+                    moveValue(slot, next);
+                }
+                next++;
+            }
+        }
+        for (int slot = next; slot < slots; slot++) {
+            live[slot] = false;
+            clearValue(slot);
+        }
+        slots = next;
+        head = 0;
+        if (capacity != keys.length) {
+            keys = Arrays.copyOf(keys, capacity);
+            live = Arrays.copyOf(live, capacity);
+            resizeValues(capacity);
+        }
+        buildIndex();
+    }
+
+    private void buildIndex() {
+        // keep the table at most half full so probe chains stay short
+        int tableSize = Integer.highestOneBit(keys.length * 2 - 1) << 1;
+        index = new int[tableSize];
+        Arrays.fill(index, EMPTY);
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot])
+                insertIndex(keys[slot], slot);
+        }
+    }
+}
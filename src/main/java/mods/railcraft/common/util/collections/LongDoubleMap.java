@@ -0,0 +1,76 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+
+package mods.railcraft.common.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * An insertion ordered map from primitive longs to primitive doubles.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public class LongDoubleMap extends AbstractLongMap {
+    private double[] values;
+
+    public LongDoubleMap() {
+        this(16);
+    }
+
+    public LongDoubleMap(int expectedSize) {
+        super(expectedSize);
+        values = new double[keys.length];
+    }
+
+    public double get(long key, double defaultValue) {
+        int slot = findSlot(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public void put(long key, double value) {
+        // find the slot first, adding a key can reallocate the value array
+        int slot = slotOf(findOrAddSlot(key));
+        values[slot] = value;
+    }
+
+    /**
+     * @return true if the key was in the map
+     */
+    public boolean remove(long key) {
+        return removeSlot(key) >= 0;
+    }
+
+    public void forEach(EntryConsumer action) {
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot])
+                action.accept(keys[slot], values[slot]);
+        }
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = 0.0;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, double value);
+    }
+}
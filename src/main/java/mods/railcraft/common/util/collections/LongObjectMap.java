@@ -0,0 +1,95 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+
+package mods.railcraft.common.util.collections;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * An insertion ordered map from primitive longs to objects.
+ * Null values are permitted, use {@link #containsKey(long)} to tell them apart from missing keys.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public class LongObjectMap<V> extends AbstractLongMap {
+    private Object[] values;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        super(expectedSize);
+        values = new Object[keys.length];
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = findSlot(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * @return the previous value, or null if there wasn't one
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(long key, @Nullable V value) {
+        int slot = slotOf(findOrAddSlot(key));
+        V old = (V) values[slot];
+        values[slot] = value;
+        return old;
+    }
+
+    /**
+     * @return the removed value, or null if there wasn't one
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = removeSlot(key);
+        if (slot < 0)
+            return null;
+        V old = (V) values[slot];
+        values[slot] = null;
+        return old;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        for (int slot = 0; slot < slots; slot++) {
+            if (live[slot])
+                action.accept(keys[slot], (V) values[slot]);
+        }
+    }
+
+    @Override
+    protected void resizeValues(int capacity) {
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    protected void moveValue(int from, int to) {
+        values[to] = values[from];
+        values[from] = null;
+    }
+
+    @Override
+    protected void clearValue(int slot) {
+        values[slot] = null;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, @Nullable V value);
+    }
+}
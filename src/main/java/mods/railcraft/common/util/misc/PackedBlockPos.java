@@ -0,0 +1,66 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+
+package mods.railcraft.common.util.misc;
+
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Helpers for working with block positions packed into a long.
+ *
+ * The layout is the same one used by {@link BlockPos#toLong()},
+ * so the values can be freely exchanged with vanilla code.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class PackedBlockPos {
+    private static final int NUM_X_BITS = 26;
+    private static final int NUM_Z_BITS = NUM_X_BITS;
+    private static final int NUM_Y_BITS = 64 - NUM_X_BITS - NUM_Z_BITS;
+    private static final int Y_SHIFT = NUM_Z_BITS;
+    private static final int X_SHIFT = Y_SHIFT + NUM_Y_BITS;
+    private static final long X_MASK = (1L << NUM_X_BITS) - 1L;
+    private static final long Y_MASK = (1L << NUM_Y_BITS) - 1L;
+    private static final long Z_MASK = (1L << NUM_Z_BITS) - 1L;
+
+    private PackedBlockPos() {
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x & X_MASK) << X_SHIFT | ((long) y & Y_MASK) << Y_SHIFT | ((long) z & Z_MASK);
+    }
+
+    public static int getX(long pos) {
+        return (int) (pos >> X_SHIFT);
+    }
+
+    public static int getY(long pos) {
+        return (int) (pos << (64 - X_SHIFT) >> (64 - NUM_Y_BITS));
+    }
+
+    public static int getZ(long pos) {
+        return (int) (pos << (64 - NUM_Z_BITS) >> (64 - NUM_Z_BITS));
+    }
+
+    public static long offset(long pos, int dx, int dy, int dz) {
+        return pack(getX(pos) + dx, getY(pos) + dy, getZ(pos) + dz);
+    }
+
+    public static BlockPos unpack(long pos) {
+        return new BlockPos(getX(pos), getY(pos), getZ(pos));
+    }
+
+    /**
+     * Loads the position into a reusable mutable position, useful for world lookups without allocating.
+     */
+    public static BlockPos.MutableBlockPos unpack(long pos, BlockPos.MutableBlockPos target) {
+        return target.setPos(getX(pos), getY(pos), getZ(pos));
+    }
+}
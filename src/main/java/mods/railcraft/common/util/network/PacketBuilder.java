@@ -16,6 +16,7 @@ import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import mods.railcraft.api.signals.AbstractPair;
 import mods.railcraft.api.signals.ISignalPacketBuilder;
+import mods.railcraft.common.blocks.RailcraftTileEntity;
 import mods.railcraft.common.carts.EntityCartJukebox;
 import mods.railcraft.common.core.RailcraftConfig;
 import mods.railcraft.common.gui.widgets.Widget;
@@ -31,12 +32,16 @@ import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.EnumHand;
 import net.minecraft.util.SoundCategory;
 import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
 import net.minecraft.world.WorldServer;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author CovertJaguar <http://www.railcraft.info>
@@ -56,7 +61,9 @@ public class PacketBuilder implements ISignalPacketBuilder {
     }
 
     public void sendTileEntityPacket(TileEntity tile) {
-        if (tile.getWorld() instanceof WorldServer) {
+        if (tile instanceof RailcraftTileEntity)
+            TileSyncDispatcher.enqueue((RailcraftTileEntity) tile);
+        else if (tile.getWorld() instanceof WorldServer) {
             WorldServer world = (WorldServer) tile.getWorld();
             SPacketUpdateTileEntity packet = tile.getUpdatePacket();
             if (packet != null)
@@ -75,7 +82,14 @@ public class PacketBuilder implements ISignalPacketBuilder {
     @Override
     public void sendPairPacketUpdate(AbstractPair pairing) {
         PacketPairUpdate pkt = new PacketPairUpdate(pairing);
-        PacketDispatcher.sendToDimension(pkt, pairing.getTile().getWorld().provider.getDimension());
+        World world = pairing.getTile().getWorld();
+        if (world instanceof WorldServer) {
+            // only players that can see one of the ends need it, the rest ask when the tile loads for them
+            List<BlockPos> ends = new ArrayList<>(pairing.getPairs());
+            ends.add(pairing.getCoords());
+            PacketDispatcher.sendToWatchers(pkt, (WorldServer) world, ends);
+        } else
+            PacketDispatcher.sendToDimension(pkt, world.provider.getDimension());
     }
 
     @Override
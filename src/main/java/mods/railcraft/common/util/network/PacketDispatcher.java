@@ -10,14 +10,20 @@
 package mods.railcraft.common.util.network;
 
 import mods.railcraft.api.core.WorldCoordinate;
+import net.minecraft.entity.player.EntityPlayer;
 import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.network.Packet;
 import net.minecraft.server.management.PlayerChunkMapEntry;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.WorldServer;
 import net.minecraftforge.fml.common.network.NetworkRegistry.TargetPoint;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 /**
  * @author CovertJaguar <http://www.railcraft.info/>
  */
@@ -67,6 +73,28 @@ public class PacketDispatcher {
         sendToWatchers(packet.getPacket(), world, worldX, worldZ);
     }
 
+    /**
+     * Sends the packet once to each player watching the chunk of any of the positions.
+     */
+    public static void sendToWatchers(RailcraftPacket packet, WorldServer world, Collection<BlockPos> positions) {
+        Set<ChunkPos> chunks = new HashSet<>();
+        for (BlockPos pos : positions) {
+            chunks.add(new ChunkPos(pos));
+        }
+        for (EntityPlayer player : world.playerEntities) {
+            if (player instanceof EntityPlayerMP && isWatchingAny(world, (EntityPlayerMP) player, chunks))
+                sendToPlayer(packet, (EntityPlayerMP) player);
+        }
+    }
+
+    private static boolean isWatchingAny(WorldServer world, EntityPlayerMP player, Collection<ChunkPos> chunks) {
+        for (ChunkPos chunk : chunks) {
+            if (world.getPlayerChunkMap().isPlayerWatchingChunk(player, chunk.chunkXPos, chunk.chunkZPos))
+                return true;
+        }
+        return false;
+    }
+
     public static void sendToWatchers(Packet packet, WorldServer world, int worldX, int worldZ) {
         int chunkX = worldX >> 4;
         int chunkZ = worldZ >> 4;
@@ -14,6 +14,7 @@ import net.minecraft.entity.player.EntityPlayerMP;
 import net.minecraft.tileentity.TileEntity;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
 import net.minecraftforge.common.DimensionManager;
 
 import java.io.IOException;
@@ -69,7 +70,9 @@ public class PacketPairRequest extends RailcraftPacket {
                     pairing = ((ISignalTileBlock) tile).getSignalBlock();
                 break;
         }
-        if (pairing != null && player != null) {
+        // answer only for tiles the player can actually see
+        if (pairing != null && player != null && world instanceof WorldServer
+                && ((WorldServer) world).getPlayerChunkMap().isPlayerWatchingChunk(player, x >> 4, z >> 4)) {
             PacketPairUpdate pkt = new PacketPairUpdate(pairing);
             PacketDispatcher.sendToPlayer(pkt, player);
         }
@@ -10,36 +10,47 @@
 package mods.railcraft.common.util.network;
 
 import mods.railcraft.client.render.world.GoggleAuraWorldRenderer;
-import mods.railcraft.common.carts.LinkageManager;
-import mods.railcraft.common.carts.Train;
+import mods.railcraft.common.carts.ShuntingAuraTickHandler.CartLinks;
 import mods.railcraft.common.util.misc.Game;
-import net.minecraft.entity.item.EntityMinecart;
 import net.minecraft.world.World;
 import net.minecraftforge.fml.relauncher.Side;
 import net.minecraftforge.fml.relauncher.SideOnly;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
 
+/**
+ * Either a full snapshot of the carts around the player, or the changes since the last packet.
+ */
 public class PacketShuntingAura extends RailcraftPacket {
-    private Collection<EntityMinecart> carts;
+    private boolean snapshot;
+    private Collection<CartLinks> changed;
+    private Collection<UUID> removed;
 
     public PacketShuntingAura() {
     }
 
-    public PacketShuntingAura(Collection<EntityMinecart> carts) {
-        this.carts = carts;
+    public PacketShuntingAura(boolean snapshot, Collection<CartLinks> changed, Collection<UUID> removed) {
+        this.snapshot = snapshot;
+        this.changed = changed;
+        this.removed = removed;
     }
 
     @Override
     public void writeData(RailcraftOutputStream data) throws IOException {
-        data.writeInt(carts.size());
-        for (EntityMinecart cart : carts) {
-            data.writeUUID(cart.getPersistentID());
-            data.writeUUID(Train.getTrainUUID(cart));
-            LinkageManager lm = LinkageManager.instance();
-            data.writeUUID(lm.getLinkA(cart));
-            data.writeUUID(lm.getLinkB(cart));
+        data.writeBoolean(snapshot);
+        data.writeInt(changed.size());
+        for (CartLinks cart : changed) {
+            data.writeUUID(cart.id);
+            data.writeUUID(cart.train);
+            data.writeUUID(cart.linkA);
+            data.writeUUID(cart.linkB);
+        }
+        data.writeInt(removed.size());
+        for (UUID id : removed) {
+            data.writeUUID(id);
         }
     }
 
@@ -49,15 +60,22 @@ public class PacketShuntingAura extends RailcraftPacket {
         World world = Game.getWorld();
         if (world == null)
             return;
-        GoggleAuraWorldRenderer.INSTANCE.cartInfos.clear();
+        Map<UUID, GoggleAuraWorldRenderer.CartInfo> cartInfos = GoggleAuraWorldRenderer.INSTANCE.cartInfos;
+        if (data.readBoolean())
+            cartInfos.clear();
         int count = data.readInt();
         for (int i = 0; i < count; i++) {
-            GoggleAuraWorldRenderer.INSTANCE.cartInfos.add(new GoggleAuraWorldRenderer.CartInfo(
+            GoggleAuraWorldRenderer.CartInfo info = new GoggleAuraWorldRenderer.CartInfo(
                     data.readUUID(),
                     data.readUUID(),
                     data.readUUID(),
                     data.readUUID()
-            ));
+            );
+            cartInfos.put(info.id, info);
+        }
+        count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            cartInfos.remove(data.readUUID());
         }
     }
 
@@ -0,0 +1,108 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.util.network;
+
+import mods.railcraft.common.blocks.RailcraftTileEntity;
+import mods.railcraft.common.util.misc.Game;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.tileentity.TileEntity;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import net.minecraftforge.fml.relauncher.Side;
+import net.minecraftforge.fml.relauncher.SideOnly;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * The tile changes of one tick, for all the chunks a player watches.
+ *
+ * Each entry is a sync update made by {@link RailcraftTileEntity#makeSyncUpdate()},
+ * written field by field so the entries can share a stream.
+ */
+public class PacketTileSync extends RailcraftPacket {
+    private Collection<Entry> entries;
+
+    public PacketTileSync() {
+    }
+
+    public PacketTileSync(Collection<Entry> entries) {
+        this.entries = entries;
+    }
+
+    @Override
+    public void writeData(RailcraftOutputStream data) throws IOException {
+        data.writeInt(entries.size());
+        for (Entry entry : entries) {
+            data.writeBlockPos(entry.pos);
+            NBTTagCompound nbt = entry.update;
+            data.writeInt(nbt.getInteger("version"));
+            boolean delta = nbt.hasKey("delta");
+            data.writeBoolean(delta);
+            if (delta) {
+                data.writeInt(nbt.getInteger("base"));
+                data.writeInt(nbt.getInteger("head"));
+                data.writeInt(nbt.getInteger("tail"));
+                writeBytes(data, nbt.getByteArray("delta"));
+            } else
+                writeBytes(data, nbt.getByteArray("sync"));
+        }
+    }
+
+    private static void writeBytes(RailcraftOutputStream data, byte[] bytes) throws IOException {
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static byte[] readBytes(RailcraftInputStream data) throws IOException {
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    @Override
+    @SideOnly(Side.CLIENT)
+    public void readData(RailcraftInputStream data) throws IOException {
+        World world = Game.getWorld();
+        if (world == null)
+            return;
+        int count = data.readInt();
+        for (int i = 0; i < count; i++) {
+            BlockPos pos = data.readBlockPos();
+            NBTTagCompound nbt = new NBTTagCompound();
+            nbt.setInteger("version", data.readInt());
+            if (data.readBoolean()) {
+                nbt.setInteger("base", data.readInt());
+                nbt.setInteger("head", data.readInt());
+                nbt.setInteger("tail", data.readInt());
+                nbt.setByteArray("delta", readBytes(data));
+            } else
+                nbt.setByteArray("sync", readBytes(data));
+            TileEntity tile = world.getTileEntity(pos);
+            if (tile instanceof RailcraftTileEntity)
+                ((RailcraftTileEntity) tile).handleSyncUpdate(nbt);
+        }
+    }
+
+    @Override
+    public int getID() {
+        return PacketType.TILE_SYNC.ordinal();
+    }
+
+    public static final class Entry {
+        private final BlockPos pos;
+        private final NBTTagCompound update;
+
+        public Entry(BlockPos pos, NBTTagCompound update) {
+            this.pos = pos;
+            this.update = update;
+        }
+    }
+}
@@ -24,7 +24,7 @@ public abstract class RailcraftPacket {
 
     public enum PacketType {
 
-        TILE_ENTITY,
+        TILE_SYNC,
         GUI_RETURN,
         TILE_EXTRA_DATA,
         TILE_REQUEST,
@@ -0,0 +1,86 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.util.network;
+
+import com.google.common.collect.MapMaker;
+import mods.railcraft.common.blocks.RailcraftTileEntity;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.entity.player.EntityPlayerMP;
+import net.minecraft.nbt.NBTTagCompound;
+import net.minecraft.server.management.PlayerChunkMap;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.world.World;
+import net.minecraft.world.WorldServer;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import net.minecraftforge.fml.common.gameevent.TickEvent;
+
+import java.util.*;
+
+/**
+ * Collects the tiles that asked to update their clients during a server tick
+ * and sends their changes at the end of the tick.
+ *
+ * A tile asking several times in a tick is only synced once. The changes are grouped by chunk
+ * and each player gets a single {@link PacketTileSync} with the changes in all the chunks they watch.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class TileSyncDispatcher {
+    private static final Map<World, Set<RailcraftTileEntity>> pending = new MapMaker().weakKeys().makeMap();
+    private static final TileSyncDispatcher eventHandler = new TileSyncDispatcher();
+
+    private TileSyncDispatcher() {
+    }
+
+    public static Object getEventListener() {
+        return eventHandler;
+    }
+
+    public static void enqueue(RailcraftTileEntity tile) {
+        World world = tile.getWorld();
+        if (world instanceof WorldServer)
+            pending.computeIfAbsent(world, w -> new LinkedHashSet<>()).add(tile);
+    }
+
+    @SubscribeEvent
+    public void tick(TickEvent.WorldTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !(event.world instanceof WorldServer))
+            return;
+        Set<RailcraftTileEntity> tiles = pending.get(event.world);
+        if (tiles == null || tiles.isEmpty())
+            return;
+        WorldServer world = (WorldServer) event.world;
+        Map<ChunkPos, List<PacketTileSync.Entry>> chunks = new LinkedHashMap<>();
+        for (RailcraftTileEntity tile : tiles) {
+            if (tile.isInvalid() || tile.getWorld() != world)
+                continue;
+            NBTTagCompound update = tile.makeSyncUpdate();
+            if (update != null)
+                chunks.computeIfAbsent(new ChunkPos(tile.getPos()), c -> new ArrayList<>()).add(new PacketTileSync.Entry(tile.getPos(), update));
+        }
+        tiles.clear();
+        if (chunks.isEmpty())
+            return;
+
+        PlayerChunkMap chunkMap = world.getPlayerChunkMap();
+        for (EntityPlayer player : world.playerEntities) {
+            if (!(player instanceof EntityPlayerMP))
+                continue;
+            EntityPlayerMP playerMP = (EntityPlayerMP) player;
+            List<PacketTileSync.Entry> batch = new ArrayList<>();
+            for (Map.Entry<ChunkPos, List<PacketTileSync.Entry>> chunk : chunks.entrySet()) {
+                if (chunkMap.isPlayerWatchingChunk(playerMP, chunk.getKey().chunkXPos, chunk.getKey().chunkZPos))
+                    batch.addAll(chunk.getValue());
+            }
+            if (!batch.isEmpty())
+                PacketDispatcher.sendToPlayer(new PacketTileSync(batch), playerMP);
+        }
+    }
+}
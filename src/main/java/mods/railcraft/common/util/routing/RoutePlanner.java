@@ -0,0 +1,523 @@
+/*------------------------------------------------------------------------------
+ Copyright (c) CovertJaguar, 2011-2017
+ http://railcraft.info
+
+ This code is the property of CovertJaguar
+ and may only be used with explicit written
+ permission unless otherwise specified on the
+ license page at http://railcraft.info/wiki/info:license.
+ -----------------------------------------------------------------------------*/
+package mods.railcraft.common.util.routing;
+
+import com.google.common.collect.MapMaker;
+import mods.railcraft.common.blocks.tracks.TrackTools;
+import mods.railcraft.common.blocks.tracks.outfitted.kits.TrackKitSwitch;
+import mods.railcraft.common.carts.Train;
+import mods.railcraft.common.util.collections.LongObjectMap;
+import net.minecraft.block.BlockRailBase.EnumRailDirection;
+import net.minecraft.block.state.IBlockState;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.item.EntityMinecart;
+import net.minecraft.entity.player.EntityPlayer;
+import net.minecraft.util.EnumFacing;
+import net.minecraft.util.SoundCategory;
+import net.minecraft.util.SoundEvent;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.IWorldEventListener;
+import net.minecraft.world.World;
+import net.minecraftforge.event.world.ChunkEvent;
+import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
+import org.apache.commons.lang3.StringUtils;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * Plans routes between the routing switches of a world.
+ *
+ * Every routing switch motor is a node. From each one the track is followed out of both
+ * branches of its switch, through any switch entered from a branch, until it reaches a switch
+ * entered from its common end. If that switch is run by a routing motor, the branch leads to it.
+ *
+ * Motors holding a routing table claim the plain destinations their table tests for.
+ * Motors without a table get a next hop for each claimed destination prefix, pointing down the
+ * branch with the shortest track to a motor that claims it. Tables always win, the plan is only
+ * used by motors without one, which would otherwise never switch.
+ *
+ * Routing tracks are not nodes. They don't branch and they don't accept a destination,
+ * they hand one out, so a cart passing one tells the planner nothing about where that
+ * destination is. They are simply followed like any other track.
+ *
+ * Only the nodes whose track changed are traced again, and the next hops are rebuilt
+ * from the traced graph the next time a cart asks. Each node remembers its answer for
+ * each destination, so repeated lookups are a single map access.
+ *
+ * @author CovertJaguar <http://www.railcraft.info>
+ */
+public final class RoutePlanner implements IWorldEventListener {
+    private static final Map<World, RoutePlanner> planners = new MapMaker().weakKeys().makeMap();
+    private static final EventHandler eventHandler = new EventHandler();
+    private static final int TRACE_LIMIT = 1024;
+    private static final Edge[] NO_EDGES = {};
+    private static final EnumFacing[][] ENDS = new EnumFacing[EnumRailDirection.values().length][];
+    private final World world;
+    private final LongObjectMap<Node> nodes = new LongObjectMap<>();
+    private final LongObjectMap<List<Node>> watchers = new LongObjectMap<>();
+    private boolean dirty;
+
+    static {
+        for (EnumRailDirection shape : EnumRailDirection.values()) {
+            switch (shape) {
+                case NORTH_SOUTH:
+                case ASCENDING_NORTH:
+                case ASCENDING_SOUTH:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.NORTH, EnumFacing.SOUTH};
+                    break;
+                case EAST_WEST:
+                case ASCENDING_EAST:
+                case ASCENDING_WEST:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.EAST, EnumFacing.WEST};
+                    break;
+                case SOUTH_EAST:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.SOUTH, EnumFacing.EAST};
+                    break;
+                case SOUTH_WEST:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.SOUTH, EnumFacing.WEST};
+                    break;
+                case NORTH_WEST:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.NORTH, EnumFacing.WEST};
+                    break;
+                default:
+                    ENDS[shape.ordinal()] = new EnumFacing[]{EnumFacing.NORTH, EnumFacing.EAST};
+            }
+        }
+    }
+
+    private RoutePlanner(World world) {
+        this.world = world;
+    }
+
+    public static Object getEventListener() {
+        return eventHandler;
+    }
+
+    /**
+     * Adds the routing motor at the position, or updates it after its table changed.
+     */
+    public static void update(World world, BlockPos pos, @Nullable RoutingLogic logic) {
+        RoutePlanner planner = planners.get(world);
+        if (planner != null)
+            planner.updateNode(pos, logic);
+    }
+
+    public static void remove(World world, BlockPos pos) {
+        RoutePlanner planner = planners.get(world);
+        if (planner != null)
+            planner.removeNode(pos.toLong());
+    }
+
+    /**
+     * @return true if the planned route for the cart's destination takes the switched branch
+     */
+    public static boolean shouldSwitch(World world, BlockPos pos, EntityMinecart cart) {
+        RoutePlanner planner = planners.get(world);
+        if (planner == null)
+            return false;
+        EntityMinecart routable = RoutingLogic.getRoutableCart(cart, Train.getTrain(cart));
+        String destination = RoutingLogic.getDestination(routable);
+        if (StringUtils.isBlank(destination))
+            return false;
+        return planner.decide(pos.toLong(), destination);
+    }
+
+    private void updateNode(BlockPos pos, @Nullable RoutingLogic logic) {
+        long key = pos.toLong();
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = new Node(pos);
+            nodes.put(key, node);
+            dirty = true;
+        }
+        boolean hasTable = logic != null;
+        Set<String> claims = logic != null ? logic.getDestinations() : Collections.emptySet();
+        if (node.hasTable != hasTable || !node.claims.equals(claims)) {
+            node.hasTable = hasTable;
+            node.claims = new HashSet<>(claims);
+            dirty = true;
+        }
+    }
+
+    private void removeNode(long key) {
+        Node node = nodes.remove(key);
+        if (node != null) {
+            unwatch(node);
+            dirty = true;
+        }
+    }
+
+    private boolean decide(long key, String destination) {
+        refresh();
+        Node node = nodes.get(key);
+        if (node == null)
+            return false;
+        Boolean decision = node.decisions.get(destination);
+        if (decision == null) {
+            decision = node.route(destination);
+            node.decisions.put(destination, decision);
+        }
+        return decision;
+    }
+
+    private void refresh() {
+        if (!dirty)
+            return;
+        dirty = false;
+        List<Node> all = new ArrayList<>();
+        nodes.forEach((key, node) -> {
+            if (node.stale)
+                trace(node);
+            node.index = all.size();
+            all.add(node);
+        });
+        computeNextHops(all);
+    }
+
+    /**
+     * A reverse shortest path search from the claimants of each destination prefix.
+     */
+    private void computeNextHops(List<Node> all) {
+        List<List<Edge>> incoming = new ArrayList<>(all.size());
+        Map<String, List<Node>> claimants = new HashMap<>();
+        for (Node node : all) {
+            incoming.add(new ArrayList<>());
+            node.nextHops.clear();
+            node.decisions.clear();
+            for (String claim : node.claims) {
+                claimants.computeIfAbsent(claim, k -> new ArrayList<>()).add(node);
+            }
+        }
+        for (Node node : all) {
+            for (Edge edge : node.edges) {
+                edge.to = edge.hasTarget ? nodes.get(edge.target) : null;
+                if (edge.to != null)
+                    incoming.get(edge.to.index).add(edge);
+            }
+        }
+
+        int[] dist = new int[all.size()];
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        for (Map.Entry<String, List<Node>> entry : claimants.entrySet()) {
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            for (Node node : entry.getValue()) {
+                dist[node.index] = 0;
+                queue.add((long) node.index);
+            }
+            while (!queue.isEmpty()) {
+                long head = queue.poll();
+                int d = (int) (head >>> 32);
+                int index = (int) head;
+                if (d > dist[index])
+                    continue;
+                for (Edge edge : incoming.get(index)) {
+                    // the way a table sends a cart it doesn't claim is unknown
+                    if (edge.from.hasTable)
+                        continue;
+                    int candidate = d + edge.length;
+                    if (candidate < dist[edge.from.index]) {
+                        dist[edge.from.index] = candidate;
+                        queue.add(((long) candidate << 32) | edge.from.index);
+                    }
+                }
+            }
+            for (Node node : all) {
+                if (node.hasTable)
+                    continue;
+                Edge best = null;
+                int bestDist = Integer.MAX_VALUE;
+                for (Edge edge : node.edges) {
+                    if (edge.to == null || dist[edge.to.index] == Integer.MAX_VALUE)
+                        continue;
+                    int d = edge.length + dist[edge.to.index];
+                    if (d < bestDist) {
+                        best = edge;
+                        bestDist = d;
+                    }
+                }
+                if (best != null)
+                    node.nextHops.put(entry.getKey(), best.switched);
+            }
+        }
+    }
+
+    private void trace(Node node) {
+        unwatch(node);
+        node.stale = false;
+        node.incomplete = false;
+        node.edges = NO_EDGES;
+        for (EnumFacing side : EnumFacing.HORIZONTALS) {
+            watch(node, node.pos.offset(side));
+        }
+        BlockPos kitPos = null;
+        TrackKitSwitch kit = null;
+        for (EnumFacing side : EnumFacing.HORIZONTALS) {
+            BlockPos pos = node.pos.offset(side);
+            if (!world.isBlockLoaded(pos)) {
+                node.incomplete = true;
+                continue;
+            }
+            TrackKitSwitch found = TrackTools.getTrackInstance(world, pos, TrackKitSwitch.class);
+            if (found != null && found.getActuatorLocation() == side.getOpposite()) {
+                kitPos = pos;
+                kit = found;
+                break;
+            }
+        }
+        if (kit == null)
+            return;
+        for (EnumFacing side : EnumFacing.HORIZONTALS) {
+            watch(node, kitPos.offset(side));
+        }
+        EnumRailDirection straight = kit.getRouteDirection(false);
+        EnumRailDirection diverging = kit.getRouteDirection(true);
+        EnumFacing common = getCommonEnd(straight, diverging);
+        if (common == null)
+            return;
+        node.edges = new Edge[]{
+                follow(node, kitPos, getOtherEnd(straight, common), straight, false),
+                follow(node, kitPos, getOtherEnd(diverging, common), diverging, true)
+        };
+    }
+
+    private Edge follow(Node node, BlockPos start, EnumFacing exit, EnumRailDirection shape, boolean switched) {
+        Edge edge = new Edge(node, switched);
+        BlockPos pos = start;
+        for (int length = 1; length <= TRACE_LIMIT; length++) {
+            BlockPos ahead = pos.offset(exit);
+            if (!world.isBlockLoaded(ahead)) {
+                node.incomplete = true;
+                return edge;
+            }
+            BlockPos next = TrackTools.getTrackConnectedTrackAt(world, ahead, shape);
+            if (next == null) {
+                watch(node, ahead);
+                watch(node, ahead.up());
+                watch(node, ahead.down());
+                return edge;
+            }
+            watch(node, next);
+            EnumFacing entry = exit.getOpposite();
+            TrackKitSwitch kit = TrackTools.getTrackInstance(world, next, TrackKitSwitch.class);
+            if (kit != null) {
+                EnumRailDirection straight = kit.getRouteDirection(false);
+                EnumRailDirection diverging = kit.getRouteDirection(true);
+                EnumFacing common = getCommonEnd(straight, diverging);
+                if (common == null)
+                    return edge;
+                if (entry == common) {
+                    edge.hasTarget = true;
+                    edge.target = next.offset(kit.getActuatorLocation()).toLong();
+                    edge.length = length;
+                    return edge;
+                }
+                if (entry != getOtherEnd(straight, common) && entry != getOtherEnd(diverging, common))
+                    return edge;
+                exit = common;
+                shape = entry == getOtherEnd(straight, common) ? straight : diverging;
+            } else {
+                shape = TrackTools.getTrackDirection(world, next);
+                EnumFacing[] ends = getEnds(shape);
+                if (ends[0] == entry)
+                    exit = ends[1];
+                else if (ends[1] == entry)
+                    exit = ends[0];
+                else
+                    return edge;
+            }
+            pos = next;
+        }
+        return edge;
+    }
+
+    @Nullable
+    private static EnumFacing getCommonEnd(EnumRailDirection a, EnumRailDirection b) {
+        for (EnumFacing end : getEnds(a)) {
+            for (EnumFacing other : getEnds(b)) {
+                if (end == other)
+                    return end;
+            }
+        }
+        return null;
+    }
+
+    private static EnumFacing getOtherEnd(EnumRailDirection shape, EnumFacing end) {
+        EnumFacing[] ends = getEnds(shape);
+        return ends[0] == end ? ends[1] : ends[0];
+    }
+
+    private static EnumFacing[] getEnds(EnumRailDirection shape) {
+        return ENDS[shape.ordinal()];
+    }
+
+    private void watch(Node node, BlockPos pos) {
+        long key = pos.toLong();
+        List<Node> list = watchers.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            watchers.put(key, list);
+        }
+        if (!list.contains(node)) {
+            list.add(node);
+            node.watched.add(key);
+        }
+    }
+
+    private void unwatch(Node node) {
+        for (long key : node.watched) {
+            List<Node> list = watchers.get(key);
+            if (list != null) {
+                list.remove(node);
+                if (list.isEmpty())
+                    watchers.remove(key);
+            }
+        }
+        node.watched.clear();
+    }
+
+    @Override
+    public void notifyBlockUpdate(World world, BlockPos pos, IBlockState oldState, IBlockState newState, int flags) {
+        if (oldState == newState)
+            return;
+        List<Node> list = watchers.get(pos.toLong());
+        if (list != null) {
+            for (Node node : list) {
+                node.stale = true;
+            }
+            dirty = true;
+        }
+    }
+
+    private void onChunkLoad() {
+        nodes.forEach((key, node) -> {
+            if (node.incomplete) {
+                node.stale = true;
+                dirty = true;
+            }
+        });
+    }
+
+    @Override
+    public void notifyLightSet(BlockPos pos) {
+    }
+
+    @Override
+    public void markBlockRangeForRenderUpdate(int x1, int y1, int z1, int x2, int y2, int z2) {
+    }
+
+    @Override
+    public void playSoundToAllNearExcept(@Nullable EntityPlayer player, SoundEvent sound, SoundCategory category, double x, double y, double z, float volume, float pitch) {
+    }
+
+    @Override
+    public void playRecord(SoundEvent sound, BlockPos pos) {
+    }
+
+    @Override
+    public void spawnParticle(int particleID, boolean ignoreRange, double x, double y, double z, double xSpeed, double ySpeed, double zSpeed, int... parameters) {
+    }
+
+    @Override
+    public void onEntityAdded(Entity entity) {
+    }
+
+    @Override
+    public void onEntityRemoved(Entity entity) {
+    }
+
+    @Override
+    public void broadcastSound(int soundID, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void playEvent(EntityPlayer player, int type, BlockPos pos, int data) {
+    }
+
+    @Override
+    public void sendBlockBreakProgress(int breakerId, BlockPos pos, int progress) {
+    }
+
+    private static final class Node {
+        private final BlockPos pos;
+        private final Set<Long> watched = new HashSet<>();
+        private final Map<String, Boolean> nextHops = new HashMap<>();
+        private final Map<String, Boolean> decisions = new HashMap<>();
+        private Set<String> claims = Collections.emptySet();
+        private Edge[] edges = NO_EDGES;
+        private boolean hasTable;
+        private boolean stale = true;
+        private boolean incomplete;
+        private int index;
+
+        private Node(BlockPos pos) {
+            this.pos = pos;
+        }
+
+        /**
+         * Follows the longest planned prefix of the destination, like a Dest line in a table would match it.
+         */
+        private boolean route(String destination) {
+            String bestPrefix = null;
+            boolean switched = false;
+            for (Map.Entry<String, Boolean> hop : nextHops.entrySet()) {
+                String prefix = hop.getKey();
+                if (destination.startsWith(prefix) && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                    bestPrefix = prefix;
+                    switched = hop.getValue();
+                }
+            }
+            return switched;
+        }
+    }
+
+    private static final class Edge {
+        private final Node from;
+        private final boolean switched;
+        private boolean hasTarget;
+        private long target;
+        private int length;
+        @Nullable
+        private Node to;
+
+        private Edge(Node from, boolean switched) {
+            this.from = from;
+            this.switched = switched;
+        }
+    }
+
+    public static final class EventHandler {
+        private EventHandler() {
+        }
+
+        @SubscribeEvent
+        public void onWorldLoad(WorldEvent.Load event) {
+            World world = event.getWorld();
+            if (world.isRemote)
+                return;
+            RoutePlanner planner = new RoutePlanner(world);
+            planners.put(world, planner);
+            world.addEventListener(planner);
+        }
+
+        @SubscribeEvent
+        public void onWorldUnload(WorldEvent.Unload event) {
+            planners.remove(event.getWorld());
+        }
+
+        @SubscribeEvent
+        public void onChunkLoad(ChunkEvent.Load event) {
+            RoutePlanner planner = planners.get(event.getWorld());
+            if (planner != null)
+                planner.onChunkLoad();
+        }
+    }
+}
@@ -9,6 +9,7 @@
  -----------------------------------------------------------------------------*/
 package mods.railcraft.common.util.routing;
 
+import com.google.common.collect.MapMaker;
 import mods.railcraft.api.carts.CartToolsAPI;
 import mods.railcraft.api.carts.IPaintedCart;
 import mods.railcraft.api.carts.IRoutableCart;
@@ -32,21 +33,31 @@ import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
 import static mods.railcraft.common.plugins.forge.PowerPlugin.FULL_POWER;
 import static mods.railcraft.common.plugins.forge.PowerPlugin.NO_POWER;
 
 /**
+ * A parsed routing table.
+ *
+ * The table is compiled once, when it's parsed: regular expressions are compiled
+ * up front and the top level expressions are kept in an array. Tables that only look at
+ * things that don't change while the cart is on the track, like its destination or type,
+ * remember their result for each cart until its destination or train changes.
+ *
  * @author CovertJaguar <http://www.railcraft.info/>
  */
 public class RoutingLogic {
 
     private static final String REGEX_SYMBOL = "\\?";
 
-    private Deque<Expression> expressions;
+    private Expression[] expressions;
+    private boolean cacheable;
+    private final Set<String> destinations = new LinkedHashSet<>();
+    private final Map<EntityMinecart, CachedResult> results = new MapMaker().weakKeys().makeMap();
     private RoutingLogicException error;
 
     private RoutingLogic(@Nullable Deque<String> data) {
@@ -73,6 +84,13 @@ public class RoutingLogic {
         return expressions != null;
     }
 
+    /**
+     * @return the plain destination prefixes this table tests for, used by the {@link RoutePlanner}
+     */
+    public Set<String> getDestinations() {
+        return isValid() ? Collections.unmodifiableSet(destinations) : Collections.emptySet();
+    }
+
     private void parseTable(Deque<String> data) throws RoutingLogicException {
         Deque<Expression> stack = new ArrayDeque<>();
         Iterator<String> it = data.descendingIterator();
@@ -82,11 +100,11 @@ public class RoutingLogic {
                 continue;
             stack.push(parseLine(line, stack));
         }
-        expressions = stack;
+        expressions = stack.toArray(new Expression[stack.size()]);
+        cacheable = Arrays.stream(expressions).allMatch(Expression::isCacheable);
     }
 
-    private EntityMinecart getRoutableCart(EntityMinecart cart) {
-        Train train = Train.getTrain(cart);
+    static EntityMinecart getRoutableCart(EntityMinecart cart, Train train) {
         if (train.size() == 1)
             return cart;
         if (train.isTrainEnd(cart)) {
@@ -108,8 +126,54 @@ public class RoutingLogic {
     public int evaluate(ITileRouting tile, EntityMinecart cart) {
         if (expressions == null)
             return NO_POWER;
-        EntityMinecart controllingCart = getRoutableCart(cart);
-        return expressions.stream().mapToInt(expression -> expression.evaluate(tile, controllingCart)).filter(value -> value != NO_POWER).findFirst().orElse(NO_POWER);
+        Train train = Train.getTrain(cart);
+        if (!cacheable)
+            return evaluateExpressions(tile, getRoutableCart(cart, train));
+        // the controlling cart is looked up again rather than kept, the value must not hold on to its key
+        EntityMinecart controllingCart = getRoutableCart(cart, train);
+        CachedResult cached = results.get(cart);
+        if (cached == null || !cached.train.equals(train.getUUID()) || cached.trainVersion != train.getVersion()) {
+            cached = new CachedResult(train);
+            results.put(cart, cached);
+        }
+        String destination = getDestination(controllingCart);
+        if (!cached.evaluated || !Objects.equals(cached.destination, destination)) {
+            cached.destination = destination;
+            cached.result = evaluateExpressions(tile, controllingCart);
+            cached.evaluated = true;
+        }
+        return cached.result;
+    }
+
+    private int evaluateExpressions(ITileRouting tile, EntityMinecart controllingCart) {
+        for (Expression expression : expressions) {
+            int value = expression.evaluate(tile, controllingCart);
+            if (value != NO_POWER)
+                return value;
+        }
+        return NO_POWER;
+    }
+
+    @Nullable
+    static String getDestination(EntityMinecart cart) {
+        return cart instanceof IRoutableCart ? ((IRoutableCart) cart).getDestination() : null;
+    }
+
+    /**
+     * The result of a cacheable table for a cart, good for as long as its train and destination stay the same.
+     */
+    private static final class CachedResult {
+        private final UUID train;
+        private final int trainVersion;
+        @Nullable
+        private String destination;
+        private int result;
+        private boolean evaluated;
+
+        private CachedResult(Train train) {
+            this.train = train.getUUID();
+            this.trainVersion = train.getVersion();
+        }
     }
 
     private Expression parseLine(String line, Deque<Expression> stack) throws RoutingLogicException {
@@ -185,6 +249,13 @@ public class RoutingLogic {
 
         int evaluate(ITileRouting tile, EntityMinecart cart);
 
+        /**
+         * @return true if the result only depends on the cart's destination and things about it that never change
+         */
+        default boolean isCacheable() {
+            return false;
+        }
+
     }
 
     private interface Condition extends Expression {
@@ -202,6 +273,8 @@ public class RoutingLogic {
 
         public final String value;
         final boolean isRegex;
+        @Nullable
+        final Pattern pattern;
 
         private ParsedCondition(String keyword, boolean supportsRegex, String line) throws RoutingLogicException {
             String keywordMatch = keyword + REGEX_SYMBOL + "?=";
@@ -211,19 +284,22 @@ public class RoutingLogic {
             if (!supportsRegex && isRegex)
                 throw new RoutingLogicException("gui.railcraft.routing.logic.regex.unsupported", line);
             this.value = line.replaceFirst(keywordMatch, "");
-            if (isRegex)
-                validateRegex(line);
+            this.pattern = isRegex ? compileRegex(value, line) : null;
         }
 
-        protected void validateRegex(String line) throws RoutingLogicException {
+        protected Pattern compileRegex(String regex, String line) throws RoutingLogicException {
             try {
-                //noinspection ResultOfMethodCallIgnored
-                Pattern.compile(value);
+                return Pattern.compile(regex);
             } catch (PatternSyntaxException ex) {
                 throw new RoutingLogicException("gui.railcraft.routing.logic.regex.invalid", line);
             }
         }
 
+        protected boolean matchesRegex(String input) {
+            //noinspection ConstantConditions
+            return pattern.matcher(input).matches();
+        }
+
         @Override
         public abstract boolean matches(ITileRouting tile, EntityMinecart cart);
 
@@ -245,6 +321,11 @@ public class RoutingLogic {
             return (cond.matches(tile, cart) ? then : else_).evaluate(tile, cart);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return cond.isCacheable() && then.isCacheable() && else_.isCacheable();
+        }
+
     }
 
     private class NOT implements Condition {
@@ -260,6 +341,11 @@ public class RoutingLogic {
             return !a.matches(tile, cart);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return a.isCacheable();
+        }
+
     }
 
     private class AND implements Condition {
@@ -276,6 +362,11 @@ public class RoutingLogic {
             return a.matches(tile, cart) && b.matches(tile, cart);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return a.isCacheable() && b.isCacheable();
+        }
+
     }
 
     private class OR implements Condition {
@@ -292,6 +383,11 @@ public class RoutingLogic {
             return a.matches(tile, cart) || b.matches(tile, cart);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return a.isCacheable() && b.isCacheable();
+        }
+
     }
 
     private class ConstantExpression implements Expression {
@@ -309,6 +405,11 @@ public class RoutingLogic {
             return value;
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 
     private class ConstantCondition implements Condition {
@@ -324,12 +425,19 @@ public class RoutingLogic {
             return value;
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 
     private class DestCondition extends ParsedCondition {
 
         DestCondition(String line) throws RoutingLogicException {
             super("Dest", true, line);
+            if (!isRegex && !value.isEmpty() && !StringUtils.equalsIgnoreCase("null", value))
+                destinations.add(value);
         }
 
         @Override
@@ -341,12 +449,17 @@ public class RoutingLogic {
                 if (StringUtils.isBlank(cartDest))
                     return false;
                 if (isRegex)
-                    return cartDest.matches(value);
+                    return matchesRegex(cartDest);
                 return cartDest.startsWith(value);
             }
             return false;
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 
     private class OwnerCondition extends ParsedCondition {
@@ -360,6 +473,11 @@ public class RoutingLogic {
             return StringUtils.equalsIgnoreCase(value, CartToolsAPI.getCartOwner(cart).getName());
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 
     private class NameCondition extends ParsedCondition {
@@ -374,7 +492,7 @@ public class RoutingLogic {
                 return StringUtils.equalsIgnoreCase("null", value);
             String customName = cart.getName();
             if (isRegex)
-                return customName.matches(value);
+                return matchesRegex(customName);
             return StringUtils.equalsIgnoreCase(customName, value);
         }
 
@@ -396,6 +514,11 @@ public class RoutingLogic {
             return itemName.equalsIgnoreCase(value);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 
     private class RefuelCondition extends ParsedCondition {
@@ -420,6 +543,8 @@ public class RoutingLogic {
 
     private class RiderCondition extends ParsedCondition {
         private final String[] tokens;
+        @Nullable
+        private final Pattern namePattern;
 
         RiderCondition(String line) throws RoutingLogicException {
             super("Rider", true, line);
@@ -459,47 +584,54 @@ public class RoutingLogic {
                 default:
                     throw new RoutingLogicException("gui.railcraft.routing.logic.unrecognized.keyword", line);
             }
+            namePattern = isRegex ? compileRegex(tokens[1], line) : null;
         }
 
         @Override
         public boolean matches(ITileRouting tile, EntityMinecart cart) {
             switch (tokens[0].toLowerCase(Locale.ROOT)) {
                 case "any":
-                    return !getPassengers(cart).isEmpty();
+                    return anyPassenger(cart, e -> true);
                 case "none":
-                    return getPassengers(cart).isEmpty();
+                    return !anyPassenger(cart, e -> true);
                 case "mob":
-                    return getPassengers(cart).stream().anyMatch(e -> e instanceof EntityMob);
+                    return anyPassenger(cart, e -> e instanceof EntityMob);
                 case "animal":
-                    return getPassengers(cart).stream().anyMatch(e -> e instanceof EntityAnimal);
+                    return anyPassenger(cart, e -> e instanceof EntityAnimal);
                 case "unnamed":
-                    return getPassengers(cart).stream().anyMatch(e -> !e.hasCustomName());
+                    return anyPassenger(cart, e -> !e.hasCustomName());
                 case "entity":
-                    return getPassengers(cart).stream().anyMatch(e -> tokens[1].equalsIgnoreCase(EntityList.getEntityString(e)));
+                    return anyPassenger(cart, e -> tokens[1].equalsIgnoreCase(EntityList.getEntityString(e)));
                 case "player":
                     if (tokens.length == 2) {
-                        if (isRegex) {
-                            return getPassengers(cart).stream().anyMatch(e -> e instanceof EntityPlayer && e.getName().matches(tokens[1]));
+                        if (namePattern != null) {
+                            return anyPassenger(cart, e -> e instanceof EntityPlayer && namePattern.matcher(e.getName()).matches());
                         } else {
-                            return getPassengers(cart).stream().anyMatch(e -> e instanceof EntityPlayer && e.getName().equalsIgnoreCase(tokens[1]));
+                            return anyPassenger(cart, e -> e instanceof EntityPlayer && e.getName().equalsIgnoreCase(tokens[1]));
                         }
                     }
-                    return getPassengers(cart).stream().anyMatch(e -> e instanceof EntityPlayer);
+                    return anyPassenger(cart, e -> e instanceof EntityPlayer);
                 case "named":
                     if (tokens.length == 2) {
-                        if (isRegex) {
-                            return getPassengers(cart).stream().anyMatch(e -> e.hasCustomName() && e.getCustomNameTag().matches(tokens[1]));
+                        if (namePattern != null) {
+                            return anyPassenger(cart, e -> e.hasCustomName() && namePattern.matcher(e.getCustomNameTag()).matches());
                         } else {
-                            return getPassengers(cart).stream().anyMatch(e -> e.hasCustomName() && e.getCustomNameTag().equalsIgnoreCase(tokens[1]));
+                            return anyPassenger(cart, e -> e.hasCustomName() && e.getCustomNameTag().equalsIgnoreCase(tokens[1]));
                         }
                     }
-                    return getPassengers(cart).stream().anyMatch(Entity::hasCustomName);
+                    return anyPassenger(cart, Entity::hasCustomName);
             }
             return false;
         }
 
-        private List<Entity> getPassengers(EntityMinecart cart) {
-            return Train.getTrain(cart).stream().flatMap(c -> c.getPassengers().stream()).collect(Collectors.toList());
+        private boolean anyPassenger(EntityMinecart cart, Predicate<Entity> test) {
+            for (EntityMinecart c : Train.getTrain(cart)) {
+                for (Entity passenger : c.getPassengers()) {
+                    if (test.test(passenger))
+                        return true;
+                }
+            }
+            return false;
         }
 
     }
@@ -577,5 +709,10 @@ public class RoutingLogic {
             return "None".equalsIgnoreCase(value);
         }
 
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
     }
 }